@@ -11,24 +11,36 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import pt.ulisboa.tecnico.cnv.javassist.tools.ICount;
 import pt.ulisboa.tecnico.cnv.javassist.model.Statistics;
 
+import pt.ulisboa.tecnico.cnv.storage.RequestRegistry;
 import pt.ulisboa.tecnico.cnv.storage.StorageUtil;
 
 public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<String, String>, String> {
 
+    private final static SimulationCache SIMULATION_CACHE = new SimulationCache();
+
     /**
-     * Simulation entrypoint.
+     * Simulation entrypoint. Throws a CancellationException if the cancellation flag (when given) is set.
+     * With distanceFields, agents share one distance field per flag instead of each searching its path.
      */
-    private String handleWorkload(int gridSize, int numBlueAgents, int numRedAgents, char flagPlacementType) {
+    private String handleWorkload(int gridSize, int numBlueAgents, int numRedAgents, char flagPlacementType,
+                                  Simulation.Output output, boolean distanceFields, AtomicBoolean cancelled) {
         try {
             int numFlagsPerTeam = gridSize / 2;
             Simulation simulation = new Simulation();
+            simulation.setOutput(output);
             simulation.init(gridSize, flagPlacementType, numBlueAgents, numRedAgents, numFlagsPerTeam, false);
+            simulation.setDistanceFields(distanceFields);
+            simulation.setCancellation(cancelled);
             simulation.run();
             return simulation.getData();
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             return e.getMessage();
         }
@@ -60,6 +72,8 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         int numBlueAgents = Integer.parseInt(parameters.get("numBlueAgents"));
         int numRedAgents = Integer.parseInt(parameters.get("numRedAgents"));
         char flagPlacementType = parameters.get("flagPlacementType").toUpperCase().charAt(0);
+        Simulation.Output output = parseOutput(parameters.get("output"));
+        boolean distanceFields = Boolean.parseBoolean(parameters.get("distanceFields"));
         boolean storeMetrics = Boolean.parseBoolean(parameters.get("storeMetrics"));
 
         if (!validateInputs(gridSize, numBlueAgents, numRedAgents, flagPlacementType)) {
@@ -71,7 +85,25 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
             return;
         }
 
-        String response = handleWorkload(gridSize, numBlueAgents, numRedAgents, flagPlacementType);
+        String requestId = he.getRequestHeaders().getFirst(RequestRegistry.REQUEST_ID_HEADER);
+        // Set when this request ran the simulation, rather than finding or awaiting another request's response.
+        AtomicBoolean simulated = new AtomicBoolean();
+        String response;
+        try {
+            AtomicBoolean cancelled = RequestRegistry.start(requestId);
+            response = SIMULATION_CACHE.get(gridSize, numBlueAgents, numRedAgents, flagPlacementType, output,
+                    cancelled, () -> {
+                simulated.set(true);
+                return handleWorkload(gridSize, numBlueAgents, numRedAgents, flagPlacementType, output,
+                        distanceFields, cancelled);
+            });
+        } catch (CancellationException e) {
+            RequestRegistry.sendCancelled(he, requestId);
+            ICount.clearThreadStatistics();
+            return;
+        } finally {
+            RequestRegistry.finish(requestId);
+        }
 
         he.sendResponseHeaders(200, response.length());
         OutputStream os = he.getResponseBody();
@@ -79,7 +111,9 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         os.close();
 
         Statistics requestStatistics = ICount.getThreadStatistics();
-        if(storeMetrics) {
+        // Cached responses did no work, and the estimator is trained on simulations where every agent searches
+        // its own path and the boards are printed.
+        if(storeMetrics && simulated.get() && !distanceFields && output == Simulation.Output.FULL) {
             StorageUtil.storeMetrics(parameters, requestStatistics, "capturetheflag");
         }
         ICount.clearThreadStatistics();
@@ -94,17 +128,21 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         int numBlueAgents = Integer.parseInt(event.get("numBlueAgents"));
         int numRedAgents = Integer.parseInt(event.get("numRedAgents"));
         char flagPlacementType = event.get("flagPlacementType").toUpperCase().charAt(0);
+        Simulation.Output output = parseOutput(event.get("output"));
+        boolean distanceFields = Boolean.parseBoolean(event.get("distanceFields"));
 
         if (!validateInputs(gridSize, numBlueAgents, numRedAgents, flagPlacementType)) {
             return "Invalid input. Please provide a valid grid size, number of blue agents, number of red agents and flag placement type (A, B or C).";
         }
 
-        return handleWorkload(gridSize, numBlueAgents, numRedAgents, flagPlacementType);
+        return SIMULATION_CACHE.get(gridSize, numBlueAgents, numRedAgents, flagPlacementType, output, null,
+                () -> handleWorkload(gridSize, numBlueAgents, numRedAgents, flagPlacementType, output, distanceFields,
+                        null));
     }
 
     public static void main(String[] args) {
         if (args.length < 4) {
-            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.capturetheflag.CaptureTheFlagHandler <grid_size> <num_blue_agents> <num_red_agents> <flag_placement_type>");
+            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.capturetheflag.CaptureTheFlagHandler <grid_size> <num_blue_agents> <num_red_agents> <flag_placement_type> [distance_fields]");
             System.out.println("Where: grid_size >= 10; num_blue_agents <= grid_size; num_red_agents <= grid_size; flag_placement_type=A|B|C");
             return;
         }
@@ -113,6 +151,7 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         int numBlueAgents = Integer.parseInt(args[1]);
         int numRedAgents = Integer.parseInt(args[2]);
         char flagPlacementType = args[3].toUpperCase().charAt(0);
+        boolean distanceFields = args.length > 4 && Boolean.parseBoolean(args[4]);
 
         if (gridSize < 10) {
             throw new IllegalArgumentException("grid size must be greater or equal to 10");
@@ -131,6 +170,7 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         int numFlagsPerTeam = gridSize / 2;
         Simulation simulation = new Simulation();
         simulation.init(gridSize, flagPlacementType, numBlueAgents, numRedAgents, numFlagsPerTeam, true);
+        simulation.setDistanceFields(distanceFields);
         simulation.run();
         System.out.println(simulation.getData());
 
@@ -138,6 +178,20 @@ public class CaptureTheFlagHandler implements HttpHandler, RequestHandler<Map<St
         System.out.println("[INFO] exec time: " + ((endTime - startTime) / 1_000_000) + " ms");
     }
 
+    /**
+     * Output of the simulation: "summary" for the final scores and number of rounds only, "rle" to add the final
+     * board run-length encoded, anything else for the full output with every board.
+     */
+    private static Simulation.Output parseOutput(String output) {
+        if ("summary".equalsIgnoreCase(output)) {
+            return Simulation.Output.SUMMARY;
+        }
+        if ("rle".equalsIgnoreCase(output)) {
+            return Simulation.Output.SUMMARY_RLE;
+        }
+        return Simulation.Output.FULL;
+    }
+
     /**
      * Parse query string into a map.
      */
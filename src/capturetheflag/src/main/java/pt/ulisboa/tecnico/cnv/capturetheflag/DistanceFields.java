@@ -0,0 +1,318 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Distances from every cell to the flags agents are heading to, one field per flag, so agents heading to
+ * the same flag share one search instead of each running its own.
+ *
+ * An agent's search returns the first step of the path to the first neighbour (in DIRECTIONS order) from
+ * which the flag is the fewest steps away, so reading the neighbours' distances picks the same step.
+ * Agents block cells and move one at a time, so instead of being recomputed, the fields are repaired after
+ * every move: the cell the agent entered can only make some distances longer and the cell it left can only
+ * make some shorter, and only those cells are updated. Fields not used in a round are dropped.
+ */
+final class DistanceFields {
+
+    /**
+     * Returned by {@link #nextStep(int, int)} when the field would not fit in the memory budget.
+     */
+    static final int NO_FIELD = -2;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final Grid grid;
+    private final int size;
+    private final int cells;
+    private final int maxFields;
+    private final Map<Integer, Field> fields = new HashMap<>();
+
+    // buffers shared by the searches and repairs of every field
+    private final int[] queue;
+    private final int[] affected;
+    private final int[] marks;
+    private final long[] seeds;
+    private int mark;
+
+    DistanceFields(Grid grid, int maxCells) {
+        this.grid = grid;
+        this.size = grid.getSize();
+        this.cells = size * size;
+        this.maxFields = Math.max(1, maxCells / cells);
+        this.queue = new int[cells];
+        this.affected = new int[cells];
+        this.marks = new int[cells];
+        this.seeds = new long[cells];
+    }
+
+    private static final class Field {
+        final int target;
+        final int[] distances;
+        boolean used;
+
+        Field(int target, int cells) {
+            this.target = target;
+            this.distances = new int[cells];
+        }
+    }
+
+    /**
+     * Key of the first step from the agent's cell to the flag, -1 if the flag cannot be reached, or
+     * {@link #NO_FIELD} if there are too many fields to add the flag's.
+     */
+    int nextStep(int start, int target) {
+        Field field = fields.get(target);
+        if (field == null) {
+            if (fields.size() >= maxFields) {
+                return NO_FIELD;
+            }
+            field = new Field(target, cells);
+            compute(field);
+            fields.put(target, field);
+        }
+        field.used = true;
+
+        int best = UNREACHABLE;
+        int step = -1;
+        int x = start / size;
+        int y = start % size;
+        for (int[] dir : Simulation.DIRECTIONS) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (grid.inBounds(nx, ny)) {
+                int n = nx * size + ny;
+                if (field.distances[n] < best) {
+                    best = field.distances[n];
+                    step = n;
+                }
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Repairs the fields after an agent moved between two adjacent cells.
+     */
+    void moved(int from, int to) {
+        for (Field field : fields.values()) {
+            // the entered cell first, the left one relies on it being blocked already
+            blocked(field, to);
+            freed(field, from);
+        }
+    }
+
+    void captured(int flag) {
+        fields.remove(flag);
+    }
+
+    /**
+     * Drops the fields no agent used in the round that ended.
+     */
+    void endRound() {
+        Iterator<Field> it = fields.values().iterator();
+        while (it.hasNext()) {
+            Field field = it.next();
+            if (!field.used) {
+                it.remove();
+            } else {
+                field.used = false;
+            }
+        }
+    }
+
+    private boolean passable(Field field, int key) {
+        return !grid.blocksPath(key, field.target);
+    }
+
+    private void compute(Field field) {
+        int[] distances = field.distances;
+        Arrays.fill(distances, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        distances[field.target] = 0;
+        queue[tail++] = field.target;
+        while (head < tail) {
+            int c = queue[head++];
+            int cx = c / size;
+            int cy = c % size;
+            for (int[] dir : Simulation.DIRECTIONS) {
+                int nx = cx + dir[0];
+                int ny = cy + dir[1];
+                if (grid.inBounds(nx, ny)) {
+                    int n = nx * size + ny;
+                    if (distances[n] == UNREACHABLE && passable(field, n)) {
+                        distances[n] = distances[c] + 1;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The cell became passable: distances can only get shorter, from the cell outwards.
+     */
+    private void freed(Field field, int key) {
+        int[] distances = field.distances;
+        int best = UNREACHABLE;
+        int x = key / size;
+        int y = key % size;
+        for (int[] dir : Simulation.DIRECTIONS) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (grid.inBounds(nx, ny) && distances[nx * size + ny] != UNREACHABLE) {
+                best = Math.min(best, distances[nx * size + ny] + 1);
+            }
+        }
+        if (best == UNREACHABLE) {
+            return;
+        }
+
+        int head = 0;
+        int tail = 0;
+        distances[key] = best;
+        queue[tail++] = key;
+        while (head < tail) {
+            int c = queue[head++];
+            int cx = c / size;
+            int cy = c % size;
+            for (int[] dir : Simulation.DIRECTIONS) {
+                int nx = cx + dir[0];
+                int ny = cy + dir[1];
+                if (grid.inBounds(nx, ny)) {
+                    int n = nx * size + ny;
+                    if (distances[n] > distances[c] + 1 && passable(field, n)) {
+                        distances[n] = distances[c] + 1;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The cell became blocked: distances can only get longer, for the cells that have no neighbour one
+     * step closer to the flag left once the cell and the other such cells are taken out.
+     */
+    private void blocked(Field field, int key) {
+        int[] distances = field.distances;
+        int blockedDistance = distances[key];
+        if (blockedDistance == UNREACHABLE) {
+            return;
+        }
+        distances[key] = UNREACHABLE;
+
+        // Cells are checked by increasing distance, so all the cells one step closer are already decided.
+        int affectedMark = ++mark;
+        int queuedMark = ++mark;
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+        tail = queueFartherNeighbors(distances, key, blockedDistance, queuedMark, tail);
+        while (head < tail) {
+            int c = queue[head++];
+            if (hasCloserNeighbor(distances, c, affectedMark)) {
+                continue;
+            }
+            marks[c] = affectedMark;
+            affected[count++] = c;
+            tail = queueFartherNeighbors(distances, c, distances[c], queuedMark, tail);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // Each affected cell starts from its best neighbour that kept its distance, then the affected cells
+        // are searched from those starts in order of distance.
+        int seedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int c = affected[i];
+            int best = UNREACHABLE;
+            int cx = c / size;
+            int cy = c % size;
+            for (int[] dir : Simulation.DIRECTIONS) {
+                int nx = cx + dir[0];
+                int ny = cy + dir[1];
+                if (grid.inBounds(nx, ny)) {
+                    int n = nx * size + ny;
+                    if (marks[n] != affectedMark && distances[n] != UNREACHABLE) {
+                        best = Math.min(best, distances[n] + 1);
+                    }
+                }
+            }
+            if (best != UNREACHABLE) {
+                seeds[seedCount++] = ((long) best << 32) | c;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            distances[affected[i]] = UNREACHABLE;
+        }
+        Arrays.sort(seeds, 0, seedCount);
+
+        head = 0;
+        tail = 0;
+        int next = 0;
+        while (next < seedCount || head < tail) {
+            int c;
+            if (next < seedCount && (head == tail || (int) (seeds[next] >>> 32) <= distances[queue[head]])) {
+                c = (int) seeds[next];
+                int distance = (int) (seeds[next++] >>> 32);
+                if (distance >= distances[c]) {
+                    continue;
+                }
+                distances[c] = distance;
+            } else {
+                c = queue[head++];
+            }
+            int cx = c / size;
+            int cy = c % size;
+            for (int[] dir : Simulation.DIRECTIONS) {
+                int nx = cx + dir[0];
+                int ny = cy + dir[1];
+                if (grid.inBounds(nx, ny)) {
+                    int n = nx * size + ny;
+                    if (marks[n] == affectedMark && distances[n] > distances[c] + 1) {
+                        distances[n] = distances[c] + 1;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean hasCloserNeighbor(int[] distances, int key, int affectedMark) {
+        int x = key / size;
+        int y = key % size;
+        for (int[] dir : Simulation.DIRECTIONS) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (grid.inBounds(nx, ny)) {
+                int n = nx * size + ny;
+                if (distances[n] == distances[key] - 1 && marks[n] != affectedMark) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int queueFartherNeighbors(int[] distances, int key, int distance, int queuedMark, int tail) {
+        int x = key / size;
+        int y = key % size;
+        for (int[] dir : Simulation.DIRECTIONS) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (grid.inBounds(nx, ny)) {
+                int n = nx * size + ny;
+                if (distances[n] == distance + 1 && marks[n] != queuedMark) {
+                    marks[n] = queuedMark;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return tail;
+    }
+}
@@ -0,0 +1,142 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flags of a team not captured yet, in square buckets of cells so that the nearest flag is found by looking
+ * at the buckets around a position instead of every flag. Flags keep the position they had in the spawn
+ * list as their ID, and ties are broken by it, so queries return what a scan of the list would.
+ */
+final class FlagIndex {
+
+    private final int size;
+    private final int bucketSize;
+    private final int bucketsPerSide;
+
+    private final int[] xs;
+    private final int[] ys;
+    /**
+     * ID of the flag on each cell, -1 if none.
+     */
+    private final int[] cellFlags;
+
+    private final int[][] bucketFlags;
+    private final int[] bucketCounts;
+    /**
+     * Flags in each row of buckets, to skip empty rows (flag placement A puts all flags in one).
+     */
+    private final int[] rowCounts;
+    /**
+     * Slot of each flag in its bucket, so it is removed by moving the bucket's last flag into it.
+     */
+    private final int[] slots;
+    private int count;
+
+    FlagIndex(int size, List<int[]> positions) {
+        this.size = size;
+        // about two flags per bucket
+        int cellsPerFlag = size * size / Math.max(1, positions.size());
+        this.bucketSize = Math.max(4, (int) Math.sqrt(2.0 * cellsPerFlag));
+        this.bucketsPerSide = (size + bucketSize - 1) / bucketSize;
+
+        this.xs = new int[positions.size()];
+        this.ys = new int[positions.size()];
+        this.slots = new int[positions.size()];
+        this.cellFlags = new int[size * size];
+        Arrays.fill(cellFlags, -1);
+        this.bucketFlags = new int[bucketsPerSide * bucketsPerSide][];
+        this.bucketCounts = new int[bucketsPerSide * bucketsPerSide];
+        this.rowCounts = new int[bucketsPerSide];
+
+        for (int id = 0; id < positions.size(); id++) {
+            int[] p = positions.get(id);
+            xs[id] = p[0];
+            ys[id] = p[1];
+            cellFlags[p[0] * size + p[1]] = id;
+            int bucket = bucket(p[0], p[1]);
+            if (bucketFlags[bucket] == null) {
+                bucketFlags[bucket] = new int[2];
+            } else if (bucketCounts[bucket] == bucketFlags[bucket].length) {
+                bucketFlags[bucket] = Arrays.copyOf(bucketFlags[bucket], 2 * bucketCounts[bucket]);
+            }
+            slots[id] = bucketCounts[bucket];
+            bucketFlags[bucket][bucketCounts[bucket]++] = id;
+            rowCounts[p[0] / bucketSize]++;
+        }
+        this.count = positions.size();
+    }
+
+    int size() {
+        return count;
+    }
+
+    int x(int id) {
+        return xs[id];
+    }
+
+    int y(int id) {
+        return ys[id];
+    }
+
+    /**
+     * ID of the flag at the position, -1 if there is none.
+     */
+    int flagAt(int x, int y) {
+        return cellFlags[x * size + y];
+    }
+
+    void remove(int id) {
+        cellFlags[xs[id] * size + ys[id]] = -1;
+        int bucket = bucket(xs[id], ys[id]);
+        int last = bucketFlags[bucket][--bucketCounts[bucket]];
+        bucketFlags[bucket][slots[id]] = last;
+        slots[last] = slots[id];
+        rowCounts[xs[id] / bucketSize]--;
+        count--;
+    }
+
+    /**
+     * ID of the flag at the smallest Manhattan distance from the position, the first in spawn order among
+     * equally near ones, or -1 if there is none. Like the scan it replaces, flags as far as the grid's two
+     * opposite corners are from each other are never returned.
+     */
+    int nearest(int x, int y) {
+        int bestDistance = 2 * (size - 1);
+        int bestId = -1;
+        if (count == 0) {
+            return bestId;
+        }
+        int bx = x / bucketSize;
+        int by = y / bucketSize;
+        for (int ring = 0; ring < bucketsPerSide; ring++) {
+            // Cells of buckets in this ring are at least this far along the axis they are ring buckets away on.
+            if (ring > 0 && (ring - 1) * bucketSize + 1 > bestDistance) {
+                break;
+            }
+            for (int i = bx - ring; i <= bx + ring; i++) {
+                if (i < 0 || i >= bucketsPerSide || rowCounts[i] == 0) continue;
+                // only the ring's edge, the inner buckets were looked at in earlier rings
+                int step = (i == bx - ring || i == bx + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int j = by - ring; j <= by + ring; j += step) {
+                    if (j < 0 || j >= bucketsPerSide) continue;
+                    int bucket = i * bucketsPerSide + j;
+                    int[] ids = bucketFlags[bucket];
+                    for (int k = 0; k < bucketCounts[bucket]; k++) {
+                        int id = ids[k];
+                        int distance = Math.abs(xs[id] - x) + Math.abs(ys[id] - y);
+                        if (distance < bestDistance || distance == bestDistance && bestId >= 0 && id < bestId) {
+                            bestDistance = distance;
+                            bestId = id;
+                        }
+                    }
+                }
+            }
+        }
+        return bestId;
+    }
+
+    private int bucket(int x, int y) {
+        return (x / bucketSize) * bucketsPerSide + y / bucketSize;
+    }
+}
@@ -8,7 +8,8 @@ import java.util.Random;
 
 public class Grid {
     int size;
-    CellType[][] cells;
+    // cell at (x, y) at x * size + y, one of the CellType values
+    byte[] cells;
     Random random; // used for spawning obstacles and flags (type C) based on a given seed (grid size)
 
     boolean coloredOutput = false;
@@ -33,30 +34,54 @@ public class Grid {
 
     static final int[][] DIRECTIONS = {{-1,0},{1,0},{0,-1},{0,1}};
 
-    enum CellType {
-        EMPTY,
-        OBSTACLE,
-        RED_FLAG,
-        BLUE_FLAG,
-        RED_AGENT,
-        BLUE_AGENT,
-        RED_AGENT_ON_COOLDOWN,
-        BLUE_AGENT_ON_COOLDOWN,
-        RED_TRACE,
-        BLUE_TRACE
+    // classes of cells, combined into the cell values
+    static final byte OBSTACLE_BIT = 1;
+    static final byte FLAG_BIT     = 1 << 1;
+    static final byte AGENT_BIT    = 1 << 2;
+    static final byte COOLDOWN_BIT = 1 << 3;
+    static final byte TRACE_BIT    = 1 << 4;
+    static final byte BLUE_BIT     = 1 << 5;
+
+    /**
+     * Cells agents cannot step into, unless it is the flag they are heading to.
+     */
+    static final byte BLOCKED_BITS = OBSTACLE_BIT | FLAG_BIT | AGENT_BIT;
+
+    static final class CellType {
+        static final byte EMPTY                  = 0;
+        static final byte OBSTACLE               = OBSTACLE_BIT;
+        static final byte RED_FLAG               = FLAG_BIT;
+        static final byte BLUE_FLAG              = FLAG_BIT | BLUE_BIT;
+        static final byte RED_AGENT              = AGENT_BIT;
+        static final byte BLUE_AGENT             = AGENT_BIT | BLUE_BIT;
+        static final byte RED_AGENT_ON_COOLDOWN  = AGENT_BIT | COOLDOWN_BIT;
+        static final byte BLUE_AGENT_ON_COOLDOWN = AGENT_BIT | COOLDOWN_BIT | BLUE_BIT;
+        static final byte RED_TRACE              = TRACE_BIT;
+        static final byte BLUE_TRACE             = TRACE_BIT | BLUE_BIT;
     }
 
+    // printed text of each cell value
+    private final String[] symbols = new String[1 << 6];
+
     public Grid(int size, boolean coloredOutput) {
         this.size   = size;
         this.random = new Random(size);
-        this.cells  = new CellType[size][size];
+        this.cells  = new byte[size * size];
         this.coloredOutput = coloredOutput;
+        symbols[CellType.EMPTY]                  = format(EMPTY);
+        symbols[CellType.OBSTACLE]               = format(OBSTACLE);
+        symbols[CellType.BLUE_AGENT]             = format(BLUE_AGENT);
+        symbols[CellType.BLUE_AGENT_ON_COOLDOWN] = format(BLUE_AGENT_ON_COOLDOWN);
+        symbols[CellType.BLUE_FLAG]              = format(BLUE_FLAG);
+        symbols[CellType.BLUE_TRACE]             = format(BLUE_TRACE);
+        symbols[CellType.RED_AGENT]              = format(RED_AGENT);
+        symbols[CellType.RED_AGENT_ON_COOLDOWN]  = format(RED_AGENT_ON_COOLDOWN);
+        symbols[CellType.RED_FLAG]               = format(RED_FLAG);
+        symbols[CellType.RED_TRACE]              = format(RED_TRACE);
     }
 
     public void init() {
-        for (int i = 0; i < size; i++) {
-            Arrays.fill(cells[i], CellType.EMPTY);
-        }
+        Arrays.fill(cells, CellType.EMPTY);
     }
 
     public void spawnObstacles() {
@@ -69,9 +94,9 @@ public class Grid {
             int x = random.nextInt(size);
             int y = random.nextInt(size);
             int yM = size - 1 - y;  // make spawning symmetric so that it is fair for both teams
-            if (cells[x][y] == CellType.EMPTY && cells[x][yM] == CellType.EMPTY) {
-                cells[x][y]  = CellType.OBSTACLE;
-                cells[x][yM] = CellType.OBSTACLE;
+            if (cells[x * size + y] == CellType.EMPTY && cells[x * size + yM] == CellType.EMPTY) {
+                cells[x * size + y]  = CellType.OBSTACLE;
+                cells[x * size + yM] = CellType.OBSTACLE;
                 placed++;
             }
         }
@@ -156,20 +181,20 @@ public class Grid {
         }
     }
 
-    private void placeFlag(int x, int y, CellType flagType, List<int[]> outList) {
-        cells[x][y] = flagType;
+    private void placeFlag(int x, int y, byte flagType, List<int[]> outList) {
+        cells[x * size + y] = flagType;
         outList.add(new int[]{x, y});
         clearSurroundings(x, y);
     }
 
     private boolean isValidFlagSpot(int x, int y) {
-        if (!inBounds(x, y) || cells[x][y] != CellType.EMPTY) return false;
+        if (!inBounds(x, y) || cells[x * size + y] != CellType.EMPTY) return false;
         // ensure there are no adjacent flags
         for (int dx = -1; dx <= 1; dx++) {
             for (int dy = -1; dy <= 1; dy++) {
                 if (dx == 0 && dy == 0) continue;
                 int nx = x + dx, ny = y + dy;
-                if (inBounds(nx, ny) && (cells[nx][ny] == CellType.RED_FLAG || cells[nx][ny] == CellType.BLUE_FLAG)) {
+                if (inBounds(nx, ny) && (cells[nx * size + ny] == CellType.RED_FLAG || cells[nx * size + ny] == CellType.BLUE_FLAG)) {
                     return false;
                 }
             }
@@ -184,14 +209,14 @@ public class Grid {
                 if (dx == 0 && dy == 0) continue;
                 int nx = x + dx, ny = y + dy;
                 if (inBounds(nx, ny) &&
-                        (cells[nx][ny] != CellType.EMPTY && cells[nx][ny] != CellType.RED_FLAG && cells[nx][ny] != CellType.BLUE_FLAG)) {
-                    cells[nx][ny] = CellType.EMPTY;
+                        (cells[nx * size + ny] != CellType.EMPTY && cells[nx * size + ny] != CellType.RED_FLAG && cells[nx * size + ny] != CellType.BLUE_FLAG)) {
+                    cells[nx * size + ny] = CellType.EMPTY;
                 }
             }
         }
     }
 
-    private void placeAgents(List<Agent> team, CellType cellType, int startRow, int startCol, int maxAgents, boolean isBlue) {
+    private void placeAgents(List<Agent> team, byte cellType, int startRow, int startCol, int maxAgents, boolean isBlue) {
         boolean[][] visited = new boolean[this.size][this.size];
         Queue<int[]> q = new LinkedList<>();
         q.add(new int[]{startRow, startCol});
@@ -200,9 +225,9 @@ public class Grid {
             int[] p = q.poll();
             int x = p[0];
             int y = p[1];
-            if (this.cells[x][y] == CellType.EMPTY) {
+            if (this.cells[x * this.size + y] == CellType.EMPTY) {
                 team.add(new Agent(x, y, isBlue));
-                this.cells[x][y] = cellType;
+                this.cells[x * this.size + y] = cellType;
             }
             for (int[] dir : DIRECTIONS) {
                 int nx = x + dir[0];
@@ -225,34 +250,35 @@ public class Grid {
     }
 
     public boolean cellHasAgent(int x, int y) {
-        switch (this.cells[x][y]) {
-            case BLUE_AGENT:
-            case BLUE_AGENT_ON_COOLDOWN:
-            case RED_AGENT:
-            case RED_AGENT_ON_COOLDOWN:
-                return true;
-            default: return false;
-        }
+        return (this.cells[x * this.size + y] & AGENT_BIT) != 0;
     }
 
     public boolean cellHasObstacle(int x, int y) {
-        return this.cells[x][y] == CellType.OBSTACLE;
+        return (this.cells[x * this.size + y] & OBSTACLE_BIT) != 0;
     }
 
     public boolean cellHasFlag(int x, int y) {
-        return this.cells[x][y] == CellType.BLUE_FLAG || this.cells[x][y] == CellType.RED_FLAG;
+        return (this.cells[x * this.size + y] & FLAG_BIT) != 0;
+    }
+
+    /**
+     * Whether agents heading to the flag at target cannot step into the cell, both given by x * size + y.
+     */
+    public boolean blocksPath(int key, int target) {
+        byte cell = this.cells[key];
+        return (cell & BLOCKED_BITS) != 0 && (key != target || (cell & FLAG_BIT) == 0);
     }
 
     public void markCellWithAgent(int x, int y, boolean isBlue) {
-        cells[x][y] = isBlue ? CellType.BLUE_AGENT : CellType.RED_AGENT;
+        cells[x * size + y] = isBlue ? CellType.BLUE_AGENT : CellType.RED_AGENT;
     }
 
     public void markCellWithAgentOnCooldown(int x, int y, boolean isBlue) {
-        cells[x][y] = isBlue ? CellType.BLUE_AGENT_ON_COOLDOWN : CellType.RED_AGENT_ON_COOLDOWN;
+        cells[x * size + y] = isBlue ? CellType.BLUE_AGENT_ON_COOLDOWN : CellType.RED_AGENT_ON_COOLDOWN;
     }
 
     public void markCellWithAgentTrace(int x, int y, boolean isBlue) {
-        cells[x][y] = isBlue ? CellType.BLUE_TRACE : CellType.RED_TRACE;
+        cells[x * size + y] = isBlue ? CellType.BLUE_TRACE : CellType.RED_TRACE;
     }
 
     public int getSize() {
@@ -262,23 +288,47 @@ public class Grid {
     public void printBoard(StringBuilder sb) {
         for (int i = 0; i < this.size; i++) {
             for (int j = 0; j < this.size; j++) {
-                switch (this.cells[i][j]) {
-                    case EMPTY:                  sb.append(format(EMPTY)); break;
-                    case OBSTACLE:               sb.append(format(OBSTACLE)); break;
-                    case BLUE_AGENT:             sb.append(format(BLUE_AGENT)); break;
-                    case BLUE_AGENT_ON_COOLDOWN: sb.append(format(BLUE_AGENT_ON_COOLDOWN)); break;
-                    case BLUE_FLAG:              sb.append(format(BLUE_FLAG)); break;
-                    case BLUE_TRACE:             sb.append(format(BLUE_TRACE)); break;
-                    case RED_AGENT:              sb.append(format(RED_AGENT)); break;
-                    case RED_AGENT_ON_COOLDOWN:  sb.append(format(RED_AGENT_ON_COOLDOWN)); break;
-                    case RED_FLAG:               sb.append(format(RED_FLAG)); break;
-                    case RED_TRACE:              sb.append(format(RED_TRACE)); break;
+                sb.append(symbols[this.cells[i * this.size + j]]);
+            }
+            sb.append("\n");
+        }
+    }
+
+    /**
+     * Prints each row as runs of a count followed by the cell's symbol without padding or color, e.g. "3.B*2.#".
+     * Symbols have no digits, so the runs can be split where a digit follows a symbol.
+     */
+    public void printBoardRunLength(StringBuilder sb) {
+        for (int i = 0; i < this.size; i++) {
+            int j = 0;
+            while (j < this.size) {
+                byte cell = this.cells[i * this.size + j];
+                int run = 1;
+                while (j + run < this.size && this.cells[i * this.size + j + run] == cell) {
+                    run++;
                 }
+                sb.append(run).append(plainSymbol(cell));
+                j += run;
             }
             sb.append("\n");
         }
     }
 
+    private static String plainSymbol(byte cell) {
+        switch (cell) {
+            case CellType.EMPTY:                  return EMPTY.trim();
+            case CellType.OBSTACLE:               return OBSTACLE.trim();
+            case CellType.BLUE_AGENT:             return BLUE_AGENT.trim();
+            case CellType.BLUE_AGENT_ON_COOLDOWN: return BLUE_AGENT_ON_COOLDOWN.trim();
+            case CellType.BLUE_FLAG:              return BLUE_FLAG.trim();
+            case CellType.BLUE_TRACE:             return BLUE_TRACE.trim();
+            case CellType.RED_AGENT:              return RED_AGENT.trim();
+            case CellType.RED_AGENT_ON_COOLDOWN:  return RED_AGENT_ON_COOLDOWN.trim();
+            case CellType.RED_FLAG:               return RED_FLAG.trim();
+            default:                              return RED_TRACE.trim();
+        }
+    }
+
     private String format(String symbol) {
         if (coloredOutput) {
             String color;
@@ -1,73 +1,137 @@
 package pt.ulisboa.tecnico.cnv.capturetheflag;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Simulation {
     Grid grid;
     int blueScore;
     int redScore;
     boolean moveDetected;
-    List<int[]> blueFlagPositions;
-    List<int[]> redFlagPositions;
+    // flags not captured yet, indexed by position (see FlagIndex)
+    FlagIndex blueFlags;
+    FlagIndex redFlags;
     List<Agent> blueAgents;
     List<Agent> redAgents;
     int numFlagsPerTeam;
 
     StringBuilder sb;
 
+    /**
+     * What run writes to the output: everything (the default), or only the final scores and number of rounds,
+     * optionally followed by the final board run-length encoded.
+     */
+    public enum Output { FULL, SUMMARY, SUMMARY_RLE }
+
+    Output output = Output.FULL;
+
+    // buffers of the path searches, reused across agents and rounds (see nextStepKey)
+    int[] queue;
+    int[] parents;
+    int[] visitedStamps;
+    int searchStamp;
+
+    // per-flag distances shared by the agents, null unless enabled (see setDistanceFields)
+    DistanceFields distanceFields;
+
+    // checked every round when set
+    AtomicBoolean cancelled;
+
+    /**
+     * Memory budget of the distance fields, in cells. Past it, agents heading to other flags search their own paths.
+     */
+    static final int MAX_DISTANCE_FIELD_CELLS = 1 << 22;
+
     static final int[][] DIRECTIONS = {{-1,0},{1,0},{0,-1},{0,1}};
 
     public Simulation() {
         this.blueScore = 0;
         this.redScore = 0;
-        this.blueFlagPositions = new ArrayList<>();
-        this.redFlagPositions = new ArrayList<>();
         this.blueAgents = new ArrayList<>();
         this.redAgents = new ArrayList<>();
         this.sb = new StringBuilder();
     }
 
+    /**
+     * Sets what run writes to the output. Must be called before init.
+     */
+    public void setOutput(Output output) {
+        this.output = output;
+    }
+
     public void init(int gridSize, char flagPlacementType, int numBlueAgents, int numRedAgents, int numFlagsPerTeam, boolean coloredOutput) {
-        sb.append("[DEBUG] grid_size = ").append(gridSize).append("; flag_placement_type = ").append(flagPlacementType).append("\n");
-        sb.append("[DEBUG] num_blue_agents = ").append(numBlueAgents).append("; num_red_agents = ").append(numRedAgents).append("\n");
-        sb.append("\n");
+        if (output == Output.FULL) {
+            sb.append("[DEBUG] grid_size = ").append(gridSize).append("; flag_placement_type = ").append(flagPlacementType).append("\n");
+            sb.append("[DEBUG] num_blue_agents = ").append(numBlueAgents).append("; num_red_agents = ").append(numRedAgents).append("\n");
+            sb.append("\n");
+        }
 
         this.grid = new Grid(gridSize, coloredOutput);
         this.numFlagsPerTeam = numFlagsPerTeam;
         grid.init();
         grid.spawnObstacles();
-        grid.spawnFlags(flagPlacementType, this.redFlagPositions, this.blueFlagPositions, numFlagsPerTeam);
+        List<int[]> redFlagPositions = new ArrayList<>();
+        List<int[]> blueFlagPositions = new ArrayList<>();
+        grid.spawnFlags(flagPlacementType, redFlagPositions, blueFlagPositions, numFlagsPerTeam);
+        this.redFlags = new FlagIndex(gridSize, redFlagPositions);
+        this.blueFlags = new FlagIndex(gridSize, blueFlagPositions);
         grid.spawnAgents(this.blueAgents, this.redAgents, numBlueAgents, numRedAgents);
     }
 
+    /**
+     * Makes run throw a CancellationException at the start of the round after the flag is set.
+     */
+    public void setCancellation(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Makes agents read their next step from one distance field per flag they head to, kept up to date as
+     * agents move, instead of searching a path each. Agents take the same steps either way. Must be called
+     * after init.
+     */
+    public void setDistanceFields(boolean enabled) {
+        this.distanceFields = enabled ? new DistanceFields(this.grid, MAX_DISTANCE_FIELD_CELLS) : null;
+    }
+
     public void run() {
         int round = 0;
 
-        sb.append("[INFO] round = ").append(round).append("; score (blue, red) = (").append(blueScore).append(", ").append(redScore).append(")\n");
-        this.grid.printBoard(sb);
-        sb.append("\n");
+        if (output == Output.FULL) {
+            sb.append("[INFO] round = ").append(round).append("; score (blue, red) = (").append(blueScore).append(", ").append(redScore).append(")\n");
+            this.grid.printBoard(sb);
+            sb.append("\n");
+        }
 
         while (true) {
+            if (cancelled != null && cancelled.get()) {
+                throw new CancellationException("Simulation cancelled");
+            }
             round++;
             this.moveDetected = false;
-            moveTeam(blueAgents, blueFlagPositions);
-            moveTeam(redAgents, redFlagPositions);
+            moveTeam(blueAgents, blueFlags);
+            moveTeam(redAgents, redFlags);
+            if (distanceFields != null) {
+                distanceFields.endRound();
+            }
             checkDeadlock();
             //this.grid.print(round, blueScore, redScore);
             //Thread.sleep(200);
             if (checkWin()) break;
         }
 
-        this.grid.printBoard(sb);
+        if (output == Output.FULL) {
+            this.grid.printBoard(sb);
+        }
 
         sb.append("[INFO] final score (blue, red) = (").append(blueScore).append(", ").append(redScore).append(")\n");
         sb.append("[INFO] num rounds = ").append(round).append("\n");
+        if (output == Output.SUMMARY_RLE) {
+            sb.append("[INFO] final board, run-length encoded:\n");
+            this.grid.printBoardRunLength(sb);
+        }
     }
 
     public boolean checkWin() {
@@ -111,116 +175,148 @@ public class Simulation {
         return true;
     }
 
-    public void moveTeam(List<Agent> team, List<int[]> flagPositions) {
+    public void moveTeam(List<Agent> team, FlagIndex flags) {
         for (Agent agent : team) {
             boolean canMove = checkCooldown(agent);
             if (!canMove) continue; // skip this agent
 
-            int[] flagPos = findNearestPosition(agent.x, agent.y, flagPositions);
+            int[] flagPos = findNearestPosition(agent.x, agent.y, flags);
             if (flagPos == null) continue;
 
-            int[] next = bfsNextStep(agent.x, agent.y, flagPos[0], flagPos[1]);
-            if (next == null || this.grid.cellHasAgent(next[0], next[1])) continue;
+            int gridSize = this.grid.getSize();
+            int next = DistanceFields.NO_FIELD;
+            if (distanceFields != null) {
+                next = distanceFields.nextStep(positionToKey(gridSize, agent.x, agent.y),
+                        positionToKey(gridSize, flagPos[0], flagPos[1]));
+            }
+            if (next == DistanceFields.NO_FIELD) {
+                next = nextStepKey(agent.x, agent.y, flagPos[0], flagPos[1]);
+            }
+            if (next < 0) continue;
+            int nextX = next / gridSize;
+            int nextY = next % gridSize;
+            if (this.grid.cellHasAgent(nextX, nextY)) continue;
 
+            int previous = positionToKey(gridSize, agent.x, agent.y);
             this.grid.markCellWithAgentTrace(agent.x, agent.y, agent.isBlue()); // mark agent traces
-            agent.setPosition(next[0], next[1]);
+            agent.setPosition(nextX, nextY);
             this.moveDetected = true;
 
-            tryCaptureFlag(agent, flagPositions);
+            tryCaptureFlag(agent, flags);
 
             if (agent.hasCooldown()) {
                 this.grid.markCellWithAgentOnCooldown(agent.x, agent.y, agent.isBlue());
             } else {
                 this.grid.markCellWithAgent(agent.x, agent.y, agent.isBlue());
             }
-        }
-    }
-
-    public void tryCaptureFlag(Agent agent, List<int[]> flagPositions) {
-        Iterator<int[]> it = flagPositions.iterator();
-        while (it.hasNext()) {
-            int[] p = it.next();
-            if (agent.isAtPosition(p[0], p[1])) {
-                it.remove();
-                if (agent.isBlue()) {
-                    this.blueScore++;
-                } else {
-                    this.redScore++;
-                }
-                agent.setCooldown();
-                break;
+            if (distanceFields != null) {
+                distanceFields.moved(previous, next);
             }
         }
     }
 
-    public int[] findNearestPosition(int x, int y, List<int[]> posLst) {
-        int best = 2*(this.grid.getSize()-1); // max from corners, e.g., [0, 0] to [n-1, n-1]
-        int bx = -1;
-        int by = -1;
+    public void tryCaptureFlag(Agent agent, FlagIndex flags) {
+        int flag = flags.flagAt(agent.x, agent.y);
+        if (flag < 0) return;
 
-        for (int[] pos : posLst) {
-            // does not take any obstacles into account -- just raw distance
-            int dis = Math.abs(pos[0] - x) + Math.abs(pos[1] - y); // Manhattan distance
-            if (dis < best) {
-                best = dis;
-                bx = pos[0];
-                by = pos[1];
-            }
+        flags.remove(flag);
+        if (distanceFields != null) {
+            distanceFields.captured(positionToKey(this.grid.getSize(), agent.x, agent.y));
+        }
+        if (agent.isBlue()) {
+            this.blueScore++;
+        } else {
+            this.redScore++;
         }
-        if (bx < 0) {
+        agent.setCooldown();
+    }
+
+    /**
+     * Flag at the smallest Manhattan distance, not taking any obstacles into account, or null if there is none.
+     */
+    public int[] findNearestPosition(int x, int y, FlagIndex flags) {
+        int flag = flags.nearest(x, y);
+        if (flag < 0) {
             return null;
         }
-        return new int[]{bx, by};
+        return new int[]{flags.x(flag), flags.y(flag)};
     }
 
     public int[] bfsNextStep(int sx, int sy, int tx, int ty) {
         int gridSize = this.grid.getSize();
-        Queue<int[]> q = new LinkedList<>();
-        q.add(new int[]{sx, sy});
-        boolean[][] visited = new boolean[gridSize][gridSize];
-        visited[sx][sy] = true;
-
-        // helpers for reconstructing path and return next step
-        Map<Integer, Integer> parent = new HashMap<>();
-        int key = positionToKey(gridSize, sx, sy);
-        int value = -1;
-        parent.put(key, value);
+        int key = nextStepKey(sx, sy, tx, ty);
+        if (key < 0)
+            return null; // no path found
+        return keyToPosition(gridSize, key);
+    }
 
-        while (!q.isEmpty()) {
-            int[] c = q.poll();
-            if (c[0] == tx && c[1] == ty) break;
+    /**
+     * Breadth-first search from the agent to the target, returning the key of the first step of the
+     * shortest path found (or -1 if there is none). Explores cells in the same order as a queue of
+     * positions would, over flat arrays reused by every search of the simulation.
+     */
+    private int nextStepKey(int sx, int sy, int tx, int ty) {
+        int gridSize = this.grid.getSize();
+        ensureSearchBuffers(gridSize);
+        // a new stamp marks every cell as not visited
+        int stamp = ++this.searchStamp;
+
+        int head = 0;
+        int tail = 0;
+        int start = positionToKey(gridSize, sx, sy);
+        int target = positionToKey(gridSize, tx, ty);
+        this.queue[tail++] = start;
+        this.visitedStamps[start] = stamp;
+        this.parents[start] = -1;
+
+        while (head < tail) {
+            int c = this.queue[head++];
+            if (c == target) break;
+            int cx = c / gridSize;
+            int cy = c % gridSize;
 
             for (int[] dir : DIRECTIONS) {
-                int nx = c[0] + dir[0];
-                int ny = c[1] + dir[1];
+                int nx = cx + dir[0];
+                int ny = cy + dir[1];
 
-                if (this.grid.inBounds(nx, ny) && !visited[nx][ny]) {
+                if (this.grid.inBounds(nx, ny)) {
+                    int n = positionToKey(gridSize, nx, ny);
+                    if (this.visitedStamps[n] == stamp) continue;
                     // agent cannot step into cell if:
                     // 1. there is as a flag and it is not the target one
                     // 2. there is an agent
                     // 3. there is an obstacle
-                    if (this.grid.cellHasFlag(nx, ny) && (nx != tx || ny != ty)
-                            || this.grid.cellHasAgent(nx, ny)
-                            || this.grid.cellHasObstacle(nx, ny))
+                    if (this.grid.blocksPath(n, target))
                         continue;
 
-                    q.add(new int[]{nx, ny});
-                    visited[nx][ny] = true;
-
-                    key = positionToKey(gridSize, nx, ny);
-                    value = positionToKey(gridSize, c[0], c[1]);
-                    parent.put(key, value);
+                    this.queue[tail++] = n;
+                    this.visitedStamps[n] = stamp;
+                    this.parents[n] = c;
                 }
-
             }
         }
-        if (!visited[tx][ty])
-            return null; // no path found
+        if (this.visitedStamps[target] != stamp)
+            return -1; // no path found
 
         // go backwards on constructed path and extract next move
-        key = positionToKey(gridSize, tx, ty);
-        key = findRootPosition(parent, key);
-        return keyToPosition(gridSize, key);
+        int key = target;
+        while (this.parents[key] != start) {
+            key = this.parents[key];
+        }
+        return key;
+    }
+
+    /**
+     * Allocates the search arrays on the first search, every cell is queued at most once per search.
+     */
+    private void ensureSearchBuffers(int gridSize) {
+        int cells = gridSize * gridSize;
+        if (this.queue == null || this.queue.length < cells) {
+            this.queue = new int[cells];
+            this.parents = new int[cells];
+            this.visitedStamps = new int[cells];
+            this.searchStamp = 0;
+        }
     }
 
     private static int positionToKey(int gridSize, int x, int y) {
@@ -231,15 +327,6 @@ public class Simulation {
         return new int[]{key / gridSize, key % gridSize};
     }
 
-    private static int findRootPosition(Map<Integer, Integer> parent, int key) {
-        int p = parent.get(key);
-        while (parent.get(p) != -1) {
-            key = p;
-            p = parent.get(key);
-        }
-        return key;
-    }
-
     public String getData() {
         return sb.toString();
     }
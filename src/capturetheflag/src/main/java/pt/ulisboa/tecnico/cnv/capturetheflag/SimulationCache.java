@@ -0,0 +1,214 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Responses of finished simulations. Obstacles, flags and agents are placed from a generator seeded with the
+ * grid size, so a response is a pure function of the grid size, number of agents of each team, flag
+ * placement and output, and never needs to be invalidated.
+ *
+ * Responses are mostly board text, so they are kept gzipped, in a least recently used map bounded by their
+ * total compressed length (configurable with the capturetheflag.cache.maxBytes system property). Requests
+ * for a simulation already running wait for it instead of running it again.
+ */
+public class SimulationCache {
+
+    public final static long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * How often a request waiting for another one's simulation checks whether it was cancelled itself.
+     */
+    private final static long CANCELLATION_CHECK_MILLIS = 50;
+
+    private final long maxBytes;
+    private long weight = 0;
+
+    private final LinkedHashMap<String, byte[]> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Simulations running, by key, completed with their response.
+     */
+    private final Map<String, CompletableFuture<String>> running = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SimulationCache() {
+        this(Long.getLong("capturetheflag.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    public SimulationCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cached response for the simulation. On a miss, runs the given simulation, unless another request is
+     * already running the same one, in which case its response is awaited. If the simulation that was
+     * awaited is cancelled, the waiting requests run it themselves, one of them at a time. A waiting request
+     * whose own cancellation flag (when given) is set stops waiting with a CancellationException.
+     */
+    public String get(int gridSize, int numBlueAgents, int numRedAgents, char flagPlacementType,
+                      Simulation.Output output, AtomicBoolean cancelled, Supplier<String> simulation) {
+        String key = key(gridSize, numBlueAgents, numRedAgents, flagPlacementType, output);
+        while (true) {
+            String response = cached(key);
+            if (response != null) {
+                hits.incrementAndGet();
+                return response;
+            }
+
+            CompletableFuture<String> flight = new CompletableFuture<>();
+            CompletableFuture<String> leader = running.putIfAbsent(key, flight);
+            if (leader == null) {
+                return run(key, flight, simulation);
+            }
+            waits.incrementAndGet();
+            try {
+                return await(leader, cancelled);
+            } catch (CancellationException e) {
+                if (cancelled != null && cancelled.get()) {
+                    throw e;
+                }
+                // the request running it was cancelled, try again
+            }
+        }
+    }
+
+    /**
+     * Response of the simulation run by another request, checking the waiting request's cancellation flag
+     * meanwhile.
+     */
+    private static String await(CompletableFuture<String> leader, AtomicBoolean cancelled) {
+        if (cancelled == null) {
+            return leader.join();
+        }
+        while (true) {
+            if (cancelled.get()) {
+                throw new CancellationException("Request cancelled while waiting for the simulation");
+            }
+            try {
+                return leader.get(CANCELLATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // still running, check the flag again
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the simulation");
+            }
+        }
+    }
+
+    /**
+     * Runs the simulation for the requests waiting on the flight. The flight is removed before it completes,
+     * so waiting requests that try again after a cancellation do not find it.
+     */
+    private String run(String key, CompletableFuture<String> flight, Supplier<String> simulation) {
+        String response;
+        try {
+            // the previous run may have finished since the lookup
+            response = cached(key);
+            if (response != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                response = simulation.get();
+                if (response != null) {
+                    put(key, compress(response));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            running.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        running.remove(key, flight);
+        flight.complete(response);
+        return response;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Simulation cache: " + getHits() + " hits, " + getWaits() + " waits, " + getMisses() + " misses";
+    }
+
+    private String cached(String key) {
+        byte[] compressed;
+        synchronized (this) {
+            compressed = responses.get(key);
+        }
+        return (compressed != null) ? decompress(compressed) : null;
+    }
+
+    private synchronized void put(String key, byte[] compressed) {
+        if (compressed.length > maxBytes) {
+            return;
+        }
+        byte[] previous = responses.put(key, compressed);
+        if (previous != null) {
+            weight -= previous.length;
+        }
+        weight += compressed.length;
+
+        Iterator<byte[]> eldest = responses.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            weight -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private static byte[] compress(String response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(response.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decompress(byte[] compressed) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String key(int gridSize, int numBlueAgents, int numRedAgents, char flagPlacementType,
+                              Simulation.Output output) {
+        return gridSize + "-" + numBlueAgents + "-" + numRedAgents + "-" + flagPlacementType + "-" + output;
+    }
+}
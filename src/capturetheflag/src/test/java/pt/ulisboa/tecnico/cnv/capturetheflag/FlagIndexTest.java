@@ -0,0 +1,106 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FlagIndexTest {
+
+    /**
+     * Nearest flag as the original simulation scanned the spawn list for it: the first flag strictly nearer
+     * than the grid's diagonal and every flag before it, or -1.
+     */
+    private static int linearNearest(int size, List<int[]> positions, boolean[] removed, int x, int y) {
+        int best = 2 * (size - 1);
+        int bestId = -1;
+        for (int id = 0; id < positions.size(); id++) {
+            if (removed[id]) continue;
+            int[] p = positions.get(id);
+            int distance = Math.abs(p[0] - x) + Math.abs(p[1] - y);
+            if (distance < best) {
+                best = distance;
+                bestId = id;
+            }
+        }
+        return bestId;
+    }
+
+    private static List<int[]> randomPositions(int size, int count, Random random) {
+        List<int[]> positions = new ArrayList<>();
+        Set<Integer> taken = new HashSet<>();
+        while (positions.size() < count) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (taken.add(x * size + y)) {
+                positions.add(new int[]{x, y});
+            }
+        }
+        return positions;
+    }
+
+    private static void assertMatchesScan(int size, List<int[]> positions, Random random) {
+        FlagIndex index = new FlagIndex(size, positions);
+        boolean[] removed = new boolean[positions.size()];
+        for (int remaining = positions.size(); remaining >= 0; remaining--) {
+            for (int query = 0; query < 50; query++) {
+                int x = random.nextInt(size);
+                int y = random.nextInt(size);
+                assertEquals(linearNearest(size, positions, removed, x, y), index.nearest(x, y),
+                        "size " + size + " at " + x + "," + y + " with " + remaining + " flags");
+            }
+            if (remaining > 0) {
+                int id;
+                do {
+                    id = random.nextInt(positions.size());
+                } while (removed[id]);
+                removed[id] = true;
+                index.remove(id);
+                assertEquals(remaining - 1, index.size());
+                assertEquals(-1, index.flagAt(positions.get(id)[0], positions.get(id)[1]));
+            }
+        }
+    }
+
+    @Test
+    void findsWhatAScanFinds() {
+        Random random = new Random(7);
+        for (int size : new int[]{1, 2, 5, 10, 17, 64, 200}) {
+            for (int count : new int[]{1, 3, size, size * 2}) {
+                assertMatchesScan(size, randomPositions(size, Math.min(count, size * size), random), random);
+            }
+        }
+    }
+
+    @Test
+    void findsWhatAScanFindsForFlagsInOneRow() {
+        // as placement A puts them, with many ties between flags
+        Random random = new Random(11);
+        for (int size : new int[]{10, 33, 128}) {
+            List<int[]> positions = new ArrayList<>();
+            for (int y = 0; y < size; y += 2) {
+                positions.add(new int[]{0, y});
+            }
+            assertMatchesScan(size, positions, random);
+        }
+    }
+
+    @Test
+    void ignoresFlagsAcrossTheDiagonal() {
+        List<int[]> positions = List.of(new int[]{9, 9});
+        FlagIndex index = new FlagIndex(10, positions);
+        assertEquals(-1, index.nearest(0, 0));
+        assertEquals(0, index.nearest(0, 1));
+        assertEquals(0, index.flagAt(9, 9));
+    }
+
+    @Test
+    void findsNothingWithoutFlags() {
+        assertEquals(-1, new FlagIndex(10, List.of()).nearest(3, 3));
+    }
+}
@@ -0,0 +1,85 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GridTest {
+
+    /**
+     * Every cell type with its printed symbol and whether it holds an agent, an obstacle or a flag.
+     */
+    private final static Object[][] CELLS = {
+            {Grid.CellType.EMPTY, Grid.EMPTY, false, false, false},
+            {Grid.CellType.OBSTACLE, Grid.OBSTACLE, false, true, false},
+            {Grid.CellType.BLUE_AGENT, Grid.BLUE_AGENT, true, false, false},
+            {Grid.CellType.BLUE_AGENT_ON_COOLDOWN, Grid.BLUE_AGENT_ON_COOLDOWN, true, false, false},
+            {Grid.CellType.BLUE_FLAG, Grid.BLUE_FLAG, false, false, true},
+            {Grid.CellType.BLUE_TRACE, Grid.BLUE_TRACE, false, false, false},
+            {Grid.CellType.RED_AGENT, Grid.RED_AGENT, true, false, false},
+            {Grid.CellType.RED_AGENT_ON_COOLDOWN, Grid.RED_AGENT_ON_COOLDOWN, true, false, false},
+            {Grid.CellType.RED_FLAG, Grid.RED_FLAG, false, false, true},
+            {Grid.CellType.RED_TRACE, Grid.RED_TRACE, false, false, false},
+    };
+
+    private static String color(String symbol) {
+        if (symbol.startsWith("B") || symbol.startsWith("X") || symbol.startsWith("b")) {
+            return Grid.BLUE_COLOR + symbol + Grid.RESET;
+        }
+        if (symbol.startsWith("R") || symbol.startsWith("Y") || symbol.startsWith("r")) {
+            return Grid.RED_COLOR + symbol + Grid.RESET;
+        }
+        return Grid.RESET + symbol + Grid.RESET;
+    }
+
+    @Test
+    void cellTypesKeepTheirMeaning() {
+        for (Object[] type : CELLS) {
+            Grid grid = new Grid(2, false);
+            grid.init();
+            grid.cells[1] = (byte) type[0];
+            String name = ((String) type[1]).trim();
+            assertEquals(type[2], grid.cellHasAgent(0, 1), name);
+            assertEquals(type[3], grid.cellHasObstacle(0, 1), name);
+            assertEquals(type[4], grid.cellHasFlag(0, 1), name);
+
+            // agents cannot step into agents, obstacles or flags, unless it is the flag they head to
+            boolean blocked = (boolean) type[2] || (boolean) type[3] || (boolean) type[4];
+            assertEquals(blocked, grid.blocksPath(1, 0), name);
+            assertEquals(blocked && !(boolean) type[4], grid.blocksPath(1, 1), name);
+        }
+    }
+
+    @Test
+    void printsEveryCellType() {
+        for (boolean colored : new boolean[]{false, true}) {
+            Grid grid = new Grid(CELLS.length, colored);
+            grid.init();
+            StringBuilder expected = new StringBuilder();
+            for (int x = 0; x < CELLS.length; x++) {
+                for (int y = 0; y < CELLS.length; y++) {
+                    Object[] type = CELLS[(x + y) % CELLS.length];
+                    grid.cells[x * CELLS.length + y] = (byte) type[0];
+                    expected.append(colored ? color((String) type[1]) : type[1]);
+                }
+                expected.append("\n");
+            }
+            StringBuilder printed = new StringBuilder();
+            grid.printBoard(printed);
+            assertEquals(expected.toString(), printed.toString());
+        }
+    }
+
+    @Test
+    void marksAgentsAndTraces() {
+        Grid grid = new Grid(3, false);
+        grid.init();
+        grid.markCellWithAgent(0, 0, true);
+        grid.markCellWithAgentOnCooldown(0, 1, false);
+        grid.markCellWithAgentTrace(0, 2, false);
+        grid.markCellWithAgentTrace(1, 0, true);
+        StringBuilder printed = new StringBuilder();
+        grid.printBoard(printed);
+        assertEquals("B R*r \nb . . \n. . . \n", printed.toString());
+    }
+}
@@ -0,0 +1,173 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationCacheTest {
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopPool() {
+        pool.shutdownNow();
+    }
+
+    private static String get(SimulationCache cache, AtomicBoolean cancelled, Supplier<String> simulation) {
+        return cache.get(20, 4, 4, 'A', Simulation.Output.FULL, cancelled, simulation);
+    }
+
+    /**
+     * Waits until the given number of requests are waiting on the cache.
+     */
+    private static void awaitWaits(SimulationCache cache, long waits) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getWaits() < waits) {
+            assertTrue(System.nanoTime() < deadline, "requests did not wait");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void servesFinishedSimulations() {
+        SimulationCache cache = new SimulationCache(1024 * 1024);
+        AtomicInteger runs = new AtomicInteger();
+        String response = "[INFO] final score (blue, red) = (10, 3)\n".repeat(100);
+        Supplier<String> simulation = () -> {
+            runs.incrementAndGet();
+            return response;
+        };
+        assertEquals(response, get(cache, null, simulation));
+        assertEquals(response, get(cache, null, simulation));
+        assertEquals(1, runs.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // any other parameter is another simulation
+        cache.get(20, 4, 4, 'A', Simulation.Output.SUMMARY, null, simulation);
+        cache.get(20, 4, 4, 'B', Simulation.Output.FULL, null, simulation);
+        cache.get(20, 4, 5, 'A', Simulation.Output.FULL, null, simulation);
+        cache.get(20, 5, 4, 'A', Simulation.Output.FULL, null, simulation);
+        cache.get(21, 4, 4, 'A', Simulation.Output.FULL, null, simulation);
+        assertEquals(6, runs.get());
+    }
+
+    @Test
+    void boundsTheCompressedResponses() {
+        SimulationCache cache = new SimulationCache(64);
+        AtomicInteger runs = new AtomicInteger();
+        Supplier<String> simulation = () -> {
+            runs.incrementAndGet();
+            // random enough not to compress below the bound
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                sb.append(Integer.toHexString(i * 0x9E3779B9));
+            }
+            return sb.toString();
+        };
+        get(cache, null, simulation);
+        get(cache, null, simulation);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void runsEachSimulationOnceForConcurrentRequests() throws Exception {
+        SimulationCache cache = new SimulationCache(1024 * 1024);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Supplier<String> simulation = () -> {
+            runs.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "response";
+        };
+        List<Future<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            AtomicBoolean cancelled = (i % 2 == 0) ? new AtomicBoolean() : null;
+            requests.add(pool.submit(() -> get(cache, cancelled, simulation)));
+        }
+        awaitWaits(cache, 7);
+        release.countDown();
+        for (Future<String> request : requests) {
+            assertEquals("response", request.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void waitingRequestsCanBeCancelled() throws Exception {
+        SimulationCache cache = new SimulationCache(1024 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> simulation = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "response";
+        };
+        Future<String> leader = pool.submit(() -> get(cache, new AtomicBoolean(), simulation));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<String> follower = pool.submit(() -> get(cache, cancelled, simulation));
+        awaitWaits(cache, 1);
+
+        cancelled.set(true);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, e.getCause());
+
+        release.countDown();
+        assertEquals("response", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitingRequestsRunTheSimulationWhenItsRequestIsCancelled() throws Exception {
+        SimulationCache cache = new SimulationCache(1024 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = pool.submit(() -> get(cache, new AtomicBoolean(), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new CancellationException("Simulation cancelled");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        AtomicInteger followerRuns = new AtomicInteger();
+        Future<String> follower = pool.submit(() -> get(cache, new AtomicBoolean(), () -> {
+            followerRuns.incrementAndGet();
+            return "response";
+        }));
+        awaitWaits(cache, 1);
+
+        release.countDown();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, e.getCause());
+        assertEquals("response", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, followerRuns.get());
+    }
+}
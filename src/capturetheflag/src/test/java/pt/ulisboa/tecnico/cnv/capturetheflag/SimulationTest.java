@@ -0,0 +1,205 @@
+package pt.ulisboa.tecnico.cnv.capturetheflag;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SimulationTest {
+
+    /**
+     * Simulation configurations with the digest of what the original simulation wrote for them.
+     */
+    static List<String[]> recordedSimulations() throws IOException {
+        List<String[]> simulations = new ArrayList<>();
+        try (InputStream resource = SimulationTest.class.getClassLoader().getResourceAsStream("simulations.sha256");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    simulations.add(line.split(" "));
+                }
+            }
+        }
+        assertFalse(simulations.isEmpty());
+        return simulations;
+    }
+
+    static Simulation simulation(String[] recorded) {
+        return simulation(recorded, Simulation.Output.FULL);
+    }
+
+    static Simulation simulation(String[] recorded, Simulation.Output output) {
+        int gridSize = Integer.parseInt(recorded[0]);
+        Simulation simulation = new Simulation();
+        simulation.setOutput(output);
+        simulation.init(gridSize, recorded[3].charAt(0), Integer.parseInt(recorded[1]), Integer.parseInt(recorded[2]),
+                gridSize / 2, false);
+        return simulation;
+    }
+
+    static String sha256(String data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void writesWhatTheOriginalSimulationWrote() throws IOException {
+        for (String[] recorded : recordedSimulations()) {
+            Simulation simulation = simulation(recorded);
+            simulation.run();
+            assertEquals(recorded[4], sha256(simulation.getData()), String.join(" ", recorded));
+        }
+    }
+
+    @Test
+    void distanceFieldsTakeTheSameSteps() throws IOException {
+        for (String[] recorded : recordedSimulations()) {
+            Simulation simulation = simulation(recorded);
+            simulation.setDistanceFields(true);
+            simulation.run();
+            assertEquals(recorded[4], sha256(simulation.getData()), String.join(" ", recorded));
+        }
+    }
+
+    /**
+     * With room for a few fields only, agents heading to the other flags search their own paths.
+     */
+    @Test
+    void distanceFieldsOverBudgetTakeTheSameSteps() throws IOException {
+        for (String[] recorded : recordedSimulations()) {
+            Simulation simulation = simulation(recorded);
+            int gridSize = simulation.grid.getSize();
+            simulation.distanceFields = new DistanceFields(simulation.grid, 3 * gridSize * gridSize);
+            simulation.run();
+            assertEquals(recorded[4], sha256(simulation.getData()), String.join(" ", recorded));
+        }
+    }
+
+    /**
+     * Expands each row of runs back into the padded symbols printBoard writes.
+     */
+    private static String decodeRunLength(List<String> rows) {
+        Pattern run = Pattern.compile("(\\d+)(\\D+?)(?=\\d|$)");
+        StringBuilder board = new StringBuilder();
+        for (String row : rows) {
+            Matcher matcher = run.matcher(row);
+            int end = 0;
+            while (matcher.find()) {
+                assertEquals(end, matcher.start(), row);
+                String symbol = String.format("%-2s", matcher.group(2));
+                board.append(symbol.repeat(Integer.parseInt(matcher.group(1))));
+                end = matcher.end();
+            }
+            assertEquals(row.length(), end, row);
+            board.append("\n");
+        }
+        return board.toString();
+    }
+
+    @Test
+    void summariesEndLikeTheFullOutput() throws IOException {
+        for (String[] recorded : recordedSimulations()) {
+            String name = String.join(" ", recorded);
+            int gridSize = Integer.parseInt(recorded[0]);
+            Simulation full = simulation(recorded);
+            full.run();
+            List<String> fullLines = full.getData().lines().collect(Collectors.toList());
+            int summaryStart = fullLines.size() - 2;
+
+            Simulation summary = simulation(recorded, Simulation.Output.SUMMARY);
+            summary.run();
+            assertEquals(String.join("\n", fullLines.subList(summaryStart, fullLines.size())) + "\n",
+                    summary.getData(), name);
+
+            Simulation rle = simulation(recorded, Simulation.Output.SUMMARY_RLE);
+            rle.run();
+            List<String> rleLines = rle.getData().lines().collect(Collectors.toList());
+            assertEquals(summary.getData(), String.join("\n", rleLines.subList(0, 2)) + "\n", name);
+            assertEquals("[INFO] final board, run-length encoded:", rleLines.get(2), name);
+            assertEquals(gridSize, rleLines.size() - 3, name);
+            String finalBoard = String.join("\n", fullLines.subList(summaryStart - gridSize, summaryStart)) + "\n";
+            assertEquals(finalBoard, decodeRunLength(rleLines.subList(3, rleLines.size())), name);
+        }
+    }
+
+    /**
+     * First step of the path the original simulation searched with a queue of positions, or null.
+     */
+    private static int[] referenceNextStep(Grid grid, int sx, int sy, int tx, int ty) {
+        int size = grid.getSize();
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        boolean[][] visited = new boolean[size][size];
+        int[][] parents = new int[size * size][];
+        queue.add(new int[]{sx, sy});
+        visited[sx][sy] = true;
+        while (!queue.isEmpty()) {
+            int[] c = queue.poll();
+            if (c[0] == tx && c[1] == ty) break;
+            for (int[] dir : Simulation.DIRECTIONS) {
+                int nx = c[0] + dir[0];
+                int ny = c[1] + dir[1];
+                if (grid.inBounds(nx, ny) && !visited[nx][ny]) {
+                    if (grid.cellHasFlag(nx, ny) && (nx != tx || ny != ty) || grid.cellHasAgent(nx, ny)
+                            || grid.cellHasObstacle(nx, ny)) {
+                        continue;
+                    }
+                    queue.add(new int[]{nx, ny});
+                    visited[nx][ny] = true;
+                    parents[nx * size + ny] = c;
+                }
+            }
+        }
+        if (!visited[tx][ty]) {
+            return null;
+        }
+        int[] step = {tx, ty};
+        while (parents[step[0] * size + step[1]][0] != sx || parents[step[0] * size + step[1]][1] != sy) {
+            step = parents[step[0] * size + step[1]];
+        }
+        return step;
+    }
+
+    @Test
+    void stepsLikeTheOriginalSearch() {
+        for (String[] configuration : new String[][]{{"16", "4", "4", "C"}, {"24", "10", "10", "B"}}) {
+            Simulation simulation = simulation(configuration);
+            Grid grid = simulation.grid;
+            int size = grid.getSize();
+            for (int start = 0; start < size * size; start++) {
+                int sx = start / size;
+                int sy = start % size;
+                if (grid.cellHasObstacle(sx, sy) || grid.cellHasFlag(sx, sy)) continue;
+                for (int target = 0; target < size * size; target += 7) {
+                    int tx = target / size;
+                    int ty = target % size;
+                    if (target == start) continue;
+                    assertArrayEquals(referenceNextStep(grid, sx, sy, tx, ty), simulation.bfsNextStep(sx, sy, tx, ty),
+                            "from " + sx + "," + sy + " to " + tx + "," + ty);
+                }
+            }
+        }
+    }
+}
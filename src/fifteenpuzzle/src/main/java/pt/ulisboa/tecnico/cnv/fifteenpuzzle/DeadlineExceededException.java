@@ -0,0 +1,19 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+/**
+ * Thrown when a solve runs past its deadline. Every IDA* iteration below the one that was interrupted
+ * completed without a solution, so its threshold is a lower bound on the solution length.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private final int lowerBound;
+
+    public DeadlineExceededException(int lowerBound) {
+        super("Deadline exceeded, the solution takes at least " + lowerBound + " moves");
+        this.lowerBound = lowerBound;
+    }
+
+    public int getLowerBound() {
+        return lowerBound;
+    }
+}
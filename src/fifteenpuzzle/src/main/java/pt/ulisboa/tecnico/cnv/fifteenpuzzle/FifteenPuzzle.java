@@ -6,12 +6,52 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FifteenPuzzle {
+
+    /**
+     * Worker-wide bound on the threads solving puzzles in parallel, shared by all concurrent requests.
+     * Configurable with the fifteenpuzzle.parallelism system property.
+     */
+    public final static int WORKER_PARALLELISM = Math.max(1,
+            Integer.getInteger("fifteenpuzzle.parallelism", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Number of subtrees a parallel iteration aims for per thread, so that threads finishing small subtrees
+     * can pick up more work.
+     */
+    private final static int BRANCHES_PER_THREAD = 8;
+
+    private final static ForkJoinPool SEARCH_POOL = new ForkJoinPool(WORKER_PARALLELISM);
+
+    /**
+     * Nodes searched between two checks of the deadline and cancellation flag, when set (a power of two).
+     */
+    private final static int STOP_CHECK_INTERVAL = 1 << 12;
+
     private final int size;
     final int[] tiles;
     private final int displayWidth;
     private int blankPos;
+    /**
+     * Nodes visited by the last in-place or parallel solve.
+     */
+    private long nodesExpanded;
+    /**
+     * System.nanoTime() by which the in-place and parallel solves must finish, if one was set.
+     */
+    private long deadline;
+    private boolean hasDeadline;
+    /**
+     * Flag that stops the in-place and parallel solves once set, if one was given.
+     */
+    private AtomicBoolean cancelled;
     private static class BoardState {
         final int[] tiles;
         final int blankPos;
@@ -148,14 +188,22 @@ public class FifteenPuzzle {
     }
 
     public List<FifteenPuzzle> idaStarSolve() {
+        return idaStarSolve(this::manhattanDistance);
+    }
+
+    /**
+     * Solves the board with IDA* guided by the given heuristic. Every heuristic is admissible,
+     * so the solution is optimal whichever is used.
+     */
+    public List<FifteenPuzzle> idaStarSolve(PuzzleHeuristic heuristic) {
         BoardState start = new BoardState(this.tiles, this.blankPos);
-        int threshold = manhattanDistance(start.tiles);
+        int threshold = heuristic.estimate(start.tiles);
         List<BoardState> path = new ArrayList<>();
         path.add(start);
     
         while (true) {
             Set<BoardState> visited = new HashSet<>();
-            int temp = idaSearch(path, 0, threshold, visited);
+            int temp = idaSearch(path, 0, threshold, visited, heuristic);
             if (temp == -1) {
                 // Found goal
                 List<FifteenPuzzle> result = new ArrayList<>();
@@ -171,9 +219,10 @@ public class FifteenPuzzle {
         }
     }
     
-    private int idaSearch(List<BoardState> path, int g, int threshold, Set<BoardState> visited) {
+    private int idaSearch(List<BoardState> path, int g, int threshold, Set<BoardState> visited,
+                          PuzzleHeuristic heuristic) {
         BoardState current = path.get(path.size() - 1);
-        int f = g + manhattanDistance(current.tiles);
+        int f = g + heuristic.estimate(current.tiles);
         if (f > threshold) return f;
         if (isSolved(current.tiles)) return -1;
     
@@ -188,7 +237,7 @@ public class FifteenPuzzle {
             if (visited.contains(neighbor)) continue;
     
             path.add(neighbor);
-            int temp = idaSearch(path, g + 1, threshold, visited);
+            int temp = idaSearch(path, g + 1, threshold, visited, heuristic);
             if (temp == -1) return -1;
             if (temp < min) min = temp;
             path.remove(path.size() - 1);
@@ -197,6 +246,399 @@ public class FifteenPuzzle {
         return min;
     }
 
+    /**
+     * Solves the board with IDA* on a single board modified in place. Instead of a visited set, the move
+     * that would undo the previous one is skipped, and the path is kept as the blank positions after each
+     * move. Finds a solution of the same (optimal) length as {@link #idaStarSolve(PuzzleHeuristic)}.
+     */
+    public List<FifteenPuzzle> idaStarSolveInPlace(PuzzleHeuristic heuristic) {
+        return idaStarSolveInPlace(heuristic, false);
+    }
+
+    /**
+     * Makes the in-place and parallel solves throw a {@link DeadlineExceededException} once System.nanoTime()
+     * passes the given value.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * Makes the in-place and parallel solves throw a CancellationException soon after the flag is set.
+     */
+    public void setCancellation(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Whether a search should stop, checked every {@link #STOP_CHECK_INTERVAL} nodes.
+     */
+    private boolean shouldStop() {
+        return hasDeadline && System.nanoTime() - deadline > 0 || cancelled != null && cancelled.get();
+    }
+
+    /**
+     * Exception for a solve stopped during the iteration with the given threshold.
+     */
+    private RuntimeException stoppedException(int threshold) {
+        if (cancelled != null && cancelled.get()) {
+            return new CancellationException("Solve cancelled");
+        }
+        return new DeadlineExceededException(threshold);
+    }
+
+    /**
+     * Solves the board in place, optionally skipping the boards already searched in the same iteration
+     * through another path, as recorded in a {@link TranspositionTable}. The solution is the same either way.
+     */
+    public List<FifteenPuzzle> idaStarSolveInPlace(PuzzleHeuristic heuristic, boolean transpositionTable) {
+        InPlaceSearch search = new InPlaceSearch(heuristic, tiles, moveTable());
+        if (transpositionTable) {
+            search.table = new TranspositionTable(size * size);
+            search.hash = search.table.hash(search.board);
+        }
+        int threshold = search.tracker.value();
+
+        while (true) {
+            search.ensureDepth(threshold);
+            if (search.table != null) {
+                search.table.nextIteration();
+            }
+            int temp = search.search(blankPos, -1, 0, threshold);
+            nodesExpanded = search.nodes;
+            if (search.stopped) {
+                throw stoppedException(threshold);
+            }
+            if (temp == -1) {
+                return replay(search.path, search.solutionLength);
+            }
+            if (temp == Integer.MAX_VALUE) {
+                return null; // No solution
+            }
+            threshold = temp;
+        }
+    }
+
+    /**
+     * Solves the board with IDA*, splitting each threshold iteration across the subtrees a few moves below
+     * the root. The subtrees are picked up in order by at most the given number of threads (capped by the
+     * worker-wide parallelism) from a pool shared by all requests. Once a subtree finds the goal, the later
+     * ones are cancelled and the earlier ones run to completion, so the solution is the one the serial
+     * {@link #idaStarSolveInPlace(PuzzleHeuristic)} finds.
+     */
+    public List<FifteenPuzzle> idaStarSolveParallel(PuzzleHeuristic heuristic, int parallelism) {
+        int threads = Math.min(parallelism, WORKER_PARALLELISM);
+        if (threads <= 1) {
+            return idaStarSolveInPlace(heuristic);
+        }
+        int[][] moves = moveTable();
+        InPlaceSearch root = new InPlaceSearch(heuristic, tiles, moves);
+        int threshold = root.tracker.value();
+        nodesExpanded = 0;
+
+        while (true) {
+            root.ensureDepth(threshold);
+            ParallelIteration iteration = new ParallelIteration(heuristic, moves, threshold);
+            iteration.expand(root, threads * BRANCHES_PER_THREAD);
+            SEARCH_POOL.invoke(new IterationTask(iteration, threads));
+            boolean stopped = false;
+            for (Branch branch : iteration.branches) {
+                nodesExpanded += branch.nodes;
+                stopped |= branch.stopped;
+            }
+
+            // A solution found in this iteration is optimal even if an earlier branch was stopped.
+            int found = iteration.foundBranch.get();
+            if (found != Integer.MAX_VALUE) {
+                Branch branch = iteration.branches.get(found);
+                return replay(branch.path, branch.solutionLength);
+            }
+            if (stopped) {
+                throw stoppedException(threshold);
+            }
+            int temp = iteration.min;
+            for (Branch branch : iteration.branches) {
+                temp = Math.min(temp, branch.result);
+            }
+            if (temp == Integer.MAX_VALUE) {
+                return null; // No solution
+            }
+            threshold = temp;
+        }
+    }
+
+    /**
+     * Positions reachable by the blank from each position, in the order of {@link #validMoves(int)}.
+     */
+    private int[][] moveTable() {
+        int[][] moves = new int[size * size][];
+        for (int pos = 0; pos < moves.length; pos++) {
+            List<Integer> valid = validMoves(pos);
+            moves[pos] = new int[valid.size()];
+            for (int i = 0; i < valid.size(); i++) {
+                moves[pos][i] = valid.get(i);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Boards of a solution, replaying its moves (blank positions) from the initial board.
+     */
+    private List<FifteenPuzzle> replay(int[] path, int length) {
+        List<FifteenPuzzle> result = new ArrayList<>();
+        int[] board = Arrays.copyOf(tiles, tiles.length);
+        int blank = blankPos;
+        result.add(new FifteenPuzzle(board, blank, size));
+        for (int i = 0; i < length; i++) {
+            int move = path[i];
+            board[blank] = board[move];
+            board[move] = 0;
+            blank = move;
+            result.add(new FifteenPuzzle(board, blank, size));
+        }
+        return result;
+    }
+
+    /**
+     * Subtree of a parallel iteration: the moves leading to it and, once searched, its outcome.
+     */
+    private static final class Branch {
+        final int[] prefix;
+        final int blank;
+        final int previous;
+        /**
+         * Smallest f above the threshold in the subtree, or -1 if it holds the goal.
+         */
+        int result = Integer.MAX_VALUE;
+        int[] path;
+        int solutionLength;
+        long nodes;
+        boolean stopped;
+
+        Branch(int[] prefix, int blank, int previous) {
+            this.prefix = prefix;
+            this.blank = blank;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * One threshold iteration of the parallel search.
+     */
+    private final class ParallelIteration {
+        final PuzzleHeuristic heuristic;
+        final int[][] moves;
+        final int threshold;
+        final List<Branch> branches = new ArrayList<>();
+        /**
+         * Smallest f above the threshold among the nodes pruned while picking the branches.
+         */
+        int min = Integer.MAX_VALUE;
+        final AtomicInteger nextBranch = new AtomicInteger();
+        /**
+         * Lowest branch that found the goal, later branches stop searching.
+         */
+        final AtomicInteger foundBranch = new AtomicInteger(Integer.MAX_VALUE);
+
+        ParallelIteration(PuzzleHeuristic heuristic, int[][] moves, int threshold) {
+            this.heuristic = heuristic;
+            this.moves = moves;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Picks the branches in serial search order, going one level deeper until there are enough of them.
+         */
+        void expand(InPlaceSearch root, int target) {
+            for (int depth = 1; ; depth++) {
+                branches.clear();
+                min = Integer.MAX_VALUE;
+                expand(root, blankPos, -1, 0, depth);
+                if (branches.size() >= target || depth >= threshold) {
+                    return;
+                }
+            }
+        }
+
+        private void expand(InPlaceSearch root, int blank, int previous, int g, int depth) {
+            int h = root.tracker.value();
+            int f = g + h;
+            if (f > threshold) {
+                min = Math.min(min, f);
+                return;
+            }
+            if (g == depth || h == 0 && isSolved(root.board)) {
+                branches.add(new Branch(Arrays.copyOf(root.path, g), blank, previous));
+                return;
+            }
+            for (int move : moves[blank]) {
+                if (move == previous) continue;
+
+                int tile = root.board[move];
+                root.board[blank] = tile;
+                root.board[move] = 0;
+                root.tracker.moved(tile, move, blank);
+                root.path[g] = move;
+
+                expand(root, move, blank, g + 1, depth);
+
+                root.board[move] = tile;
+                root.board[blank] = 0;
+                root.tracker.moved(tile, blank, move);
+            }
+        }
+
+        /**
+         * Searches branches, taking the next unsearched one each time, until none is left or a goal was found
+         * in an earlier branch.
+         */
+        void searchBranches() {
+            while (true) {
+                int index = nextBranch.getAndIncrement();
+                if (index >= branches.size() || index > foundBranch.get()) {
+                    return;
+                }
+                Branch branch = branches.get(index);
+                int[] board = Arrays.copyOf(tiles, tiles.length);
+                int blank = blankPos;
+                for (int move : branch.prefix) {
+                    board[blank] = board[move];
+                    board[move] = 0;
+                    blank = move;
+                }
+                InPlaceSearch search = new InPlaceSearch(heuristic, board, moves);
+                search.ensureDepth(threshold);
+                System.arraycopy(branch.prefix, 0, search.path, 0, branch.prefix.length);
+                search.cancellation = foundBranch;
+                search.branch = index;
+
+                branch.result = search.search(branch.blank, branch.previous, branch.prefix.length, threshold);
+                branch.nodes = search.nodes;
+                branch.stopped = search.stopped;
+                if (branch.result == -1) {
+                    branch.path = search.path;
+                    branch.solutionLength = search.solutionLength;
+                    foundBranch.accumulateAndGet(index, Math::min);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the threads of a parallel iteration and returns once all of them are done.
+     */
+    private static final class IterationTask extends RecursiveAction {
+        private final ParallelIteration iteration;
+        private final int threads;
+
+        IterationTask(ParallelIteration iteration, int threads) {
+            this.iteration = iteration;
+            this.threads = threads;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        iteration.searchBranches();
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(workers);
+        }
+    }
+
+    /**
+     * State of one in-place search: the board, its tracked estimate and the moves of the current path.
+     */
+    private final class InPlaceSearch {
+        final int[] board;
+        final PuzzleHeuristic.Tracker tracker;
+        final int[][] moves;
+        int[] path = new int[0];
+        int solutionLength;
+        /**
+         * Set when searching a branch of a parallel iteration, which stops once an earlier branch found the goal.
+         */
+        AtomicInteger cancellation;
+        int branch;
+        /**
+         * Set when boards searched through another path are skipped, with the hash of the current board.
+         */
+        TranspositionTable table;
+        long hash;
+        long nodes;
+        /**
+         * Set once the deadline passed or the solve was cancelled, every node then returns right away.
+         */
+        boolean stopped;
+
+        InPlaceSearch(PuzzleHeuristic heuristic, int[] board, int[][] moves) {
+            this.board = Arrays.copyOf(board, board.length);
+            this.tracker = heuristic.track(this.board);
+            this.moves = moves;
+        }
+
+        void ensureDepth(int threshold) {
+            if (path.length <= threshold) {
+                path = Arrays.copyOf(path, threshold + 1);
+            }
+        }
+
+        int search(int blank, int previous, int g, int threshold) {
+            if (cancellation != null && cancellation.get() < branch) return Integer.MAX_VALUE;
+            if (stopped || (hasDeadline || cancelled != null) && (nodes & (STOP_CHECK_INTERVAL - 1)) == 0
+                    && shouldStop()) {
+                stopped = true;
+                return Integer.MAX_VALUE;
+            }
+            nodes++;
+            int h = tracker.value();
+            int f = g + h;
+            if (f > threshold) return f;
+            if (h == 0 && isSolved(board)) {
+                solutionLength = g;
+                return -1;
+            }
+            // Already searched in this iteration with at least as much budget left.
+            if (table != null && threshold - g >= TranspositionTable.MIN_BUDGET && table.visit(hash, g)) {
+                return Integer.MAX_VALUE;
+            }
+
+            int min = Integer.MAX_VALUE;
+            for (int move : moves[blank]) {
+                if (move == previous) continue;
+
+                int tile = board[move];
+                board[blank] = tile;
+                board[move] = 0;
+                tracker.moved(tile, move, blank);
+                long moveHash = (table != null) ? table.zobrist(tile, move) ^ table.zobrist(tile, blank) : 0;
+                hash ^= moveHash;
+                path[g] = move;
+
+                int temp = search(move, blank, g + 1, threshold);
+                if (temp == -1) return -1;
+                if (temp < min) min = temp;
+
+                board[move] = tile;
+                board[blank] = 0;
+                tracker.moved(tile, blank, move);
+                hash ^= moveHash;
+            }
+            return min;
+        }
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
     public static FifteenPuzzle fromArray(int[] board, int size) {
         FifteenPuzzle puzzle = new FifteenPuzzle(size);
         System.arraycopy(board, 0, puzzle.tiles, 0, board.length);
@@ -12,28 +12,57 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import pt.ulisboa.tecnico.cnv.javassist.tools.ICount;
 import pt.ulisboa.tecnico.cnv.javassist.model.Statistics;
 
+import pt.ulisboa.tecnico.cnv.storage.RequestRegistry;
 import pt.ulisboa.tecnico.cnv.storage.StorageUtil;
 
 public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<String, String>, String> {
 
     /**
-     * Solver entrypoint.
+     * Responses of the puzzles already solved by this worker (or warm Lambda container).
      */
-    private String handleWorkload(int size, int shuffles) {
+    private final static SolutionCache SOLUTION_CACHE = new SolutionCache();
+
+    /**
+     * Header with the milliseconds the load balancer waits for the response, used when the request has no
+     * timeBudget parameter.
+     */
+    public final static String TIME_BUDGET_HEADER = "X-Time-Budget-Millis";
+
+    /**
+     * Status of the responses of solves that ran out of time.
+     */
+    public final static int DEADLINE_EXCEEDED_STATUS = 504;
+
+    /**
+     * Solver entrypoint. Throws a {@link DeadlineExceededException} if the solve is still running when
+     * System.nanoTime() passes the deadline, unless the time budget is 0, and a CancellationException if
+     * the cancellation flag (when given) is set.
+     */
+    private String handleWorkload(int size, int shuffles, int parallelism, boolean transpositionTable,
+                                  long timeBudget, long deadline, AtomicBoolean cancelled) {
         StringBuilder sb = new StringBuilder();
 
         FifteenPuzzle puzzle = new FifteenPuzzle(size);
         Random random = new Random(42); // fixed seed
         puzzle.shuffle(shuffles, random);
+        if (timeBudget > 0) {
+            puzzle.setDeadline(deadline);
+        }
+        if (cancelled != null) {
+            puzzle.setCancellation(cancelled);
+        }
 
         sb.append("\nInitial (Shuffled) Board:").append("\n");
         sb.append(puzzle.getData()).append("\n");
 
-        List<FifteenPuzzle> solution = puzzle.idaStarSolve();
+        List<FifteenPuzzle> solution = solve(puzzle, size, parallelism, transpositionTable);
 
         if (solution != null && !solution.isEmpty()) {
             sb.append("\nFinal (Solved) Board:").append("\n");
@@ -49,6 +78,7 @@ public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<Str
      */
     @Override
     public void handle(HttpExchange he) throws IOException {
+        long start = System.nanoTime();
         // Handling CORS.
         he.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
 
@@ -69,17 +99,42 @@ public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<Str
         int size = Integer.parseInt(parameters.get("size"));
         int shuffles = Integer.parseInt(parameters.get("shuffles"));
         boolean storeMetrics = Boolean.parseBoolean(parameters.get("storeMetrics"));
+        int parallelism = parseParallelism(parameters.get("parallelism"));
+        boolean transpositionTable = Boolean.parseBoolean(parameters.get("transpositionTable"));
+        long timeBudget = parseTimeBudget(parameters.containsKey("timeBudget")
+                ? parameters.get("timeBudget") : he.getRequestHeaders().getFirst(TIME_BUDGET_HEADER));
+
+        String response = SOLUTION_CACHE.get(size, shuffles);
+        boolean cached = response != null;
+        boolean expired = false;
+        if (!cached) {
+            String requestId = he.getRequestHeaders().getFirst(RequestRegistry.REQUEST_ID_HEADER);
+            try {
+                response = handleWorkload(size, shuffles, parallelism, transpositionTable,
+                        timeBudget, start + TimeUnit.MILLISECONDS.toNanos(timeBudget), RequestRegistry.start(requestId));
+                SOLUTION_CACHE.put(size, shuffles, response);
+            } catch (DeadlineExceededException e) {
+                response = deadlineExceededResponse(timeBudget, e);
+                expired = true;
+            } catch (CancellationException e) {
+                RequestRegistry.sendCancelled(he, requestId);
+                ICount.clearThreadStatistics();
+                return;
+            } finally {
+                RequestRegistry.finish(requestId);
+            }
+        }
 
-        String response = handleWorkload(size, shuffles);
-
-        he.sendResponseHeaders(200, response.length());
+        he.sendResponseHeaders(expired ? DEADLINE_EXCEEDED_STATUS : 200, response.length());
         OutputStream os = he.getResponseBody();
         os.write(response.getBytes());
         os.close();
 
         Statistics requestStatistics = ICount.getThreadStatistics();
 
-        if(storeMetrics) {
+        // Cached responses did no work, interrupted solves did only part of it, and parallel solves run on
+        // pool threads whose instructions are not counted for this request.
+        if(storeMetrics && !cached && !expired && parallelism <= 1) {
             StorageUtil.storeMetrics(parameters, requestStatistics, "fifteenpuzzle");
         }
         ICount.clearThreadStatistics();
@@ -92,20 +147,36 @@ public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<Str
      */
     @Override
     public String handleRequest(Map<String, String> event, Context context) {
+        long start = System.nanoTime();
         int size = Integer.parseInt(event.get("size"));
         int shuffles = Integer.parseInt(event.get("shuffles"));
-
-        return handleWorkload(size, shuffles);
+        int parallelism = parseParallelism(event.get("parallelism"));
+        boolean transpositionTable = Boolean.parseBoolean(event.get("transpositionTable"));
+        long timeBudget = parseTimeBudget(event.get("timeBudget"));
+
+        String response = SOLUTION_CACHE.get(size, shuffles);
+        if (response == null) {
+            try {
+                response = handleWorkload(size, shuffles, parallelism, transpositionTable,
+                        timeBudget, start + TimeUnit.MILLISECONDS.toNanos(timeBudget), null);
+                SOLUTION_CACHE.put(size, shuffles, response);
+            } catch (DeadlineExceededException e) {
+                response = deadlineExceededResponse(timeBudget, e);
+            }
+        }
+        return response;
     }
 
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.fifteenpuzzle.FifteenPuzzleHandler <size> <number_of_shuffles>");
+            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.fifteenpuzzle.FifteenPuzzleHandler <size> <number_of_shuffles> [parallelism] [transposition_table]");
             return;
         }
 
         int size = Integer.parseInt(args[0]);
         int shuffles = Integer.parseInt(args[1]);
+        int parallelism = args.length > 2 ? parseParallelism(args[2]) : 1;
+        boolean transpositionTable = args.length > 3 && Boolean.parseBoolean(args[3]);
 
         FifteenPuzzle puzzle = new FifteenPuzzle(size);
         Random random = new Random(42); // fixed seed
@@ -114,7 +185,9 @@ public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<Str
         System.out.println("\nInitial (Shuffled) Board:");
         System.out.println(puzzle.getData());
 
-        List<FifteenPuzzle> solution = puzzle.idaStarSolve();
+        List<FifteenPuzzle> solution = solve(puzzle, size, parallelism, transpositionTable);
+        System.out.println("Expanded " + puzzle.getNodesExpanded() + " nodes"
+                + (transpositionTable && parallelism <= 1 ? " with the transposition table." : "."));
 
         if (solution != null && !solution.isEmpty()) {
             System.out.println("\nFinal (Solved) Board:");
@@ -124,6 +197,53 @@ public class FifteenPuzzleHandler implements HttpHandler, RequestHandler<Map<Str
         System.out.println(FifteenPuzzle.getSolutionData(solution));
     }
 
+    /**
+     * Solves the puzzle with the strongest heuristic for its size. The transposition table only applies to
+     * serial solves.
+     */
+    private static List<FifteenPuzzle> solve(FifteenPuzzle puzzle, int size, int parallelism,
+                                             boolean transpositionTable) {
+        PuzzleHeuristic heuristic = PuzzleHeuristic.strongest(size);
+        return (parallelism > 1)
+                ? puzzle.idaStarSolveParallel(heuristic, parallelism)
+                : puzzle.idaStarSolveInPlace(heuristic, transpositionTable);
+    }
+
+    /**
+     * Threads requested to solve the puzzle, serial unless the request opts in. Capped by the worker-wide
+     * parallelism when solving.
+     */
+    private static int parseParallelism(String parallelism) {
+        if (parallelism == null || parallelism.isEmpty()) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(parallelism));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Milliseconds the solve may take, 0 (no limit) unless the request sets a positive one.
+     */
+    private static long parseTimeBudget(String timeBudget) {
+        if (timeBudget == null || timeBudget.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(timeBudget));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String deadlineExceededResponse(long timeBudget, DeadlineExceededException e) {
+        System.out.println("Time budget of " + timeBudget + " ms exceeded.");
+        return "\nTime budget of " + timeBudget + " ms exceeded, the solution takes at least "
+                + e.getLowerBound() + " moves.\n";
+    }
+
     /**
      * Parse query string into a map.
      */
@@ -0,0 +1,74 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+/**
+ * Manhattan distance plus linear conflicts. When tiles are in their goal row (or column) but in the
+ * wrong order, some of them have to leave the line and come back, which costs two extra moves each.
+ * The fewest tiles that must leave a line are those outside its longest increasing subsequence.
+ */
+final class LinearConflictHeuristic implements PuzzleHeuristic {
+
+    private final int size;
+
+    LinearConflictHeuristic(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int estimate(int[] tiles) {
+        int sum = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            int val = tiles[i];
+            if (val != 0) {
+                sum += Math.abs(i / size - (val - 1) / size) + Math.abs(i % size - (val - 1) % size);
+            }
+        }
+
+        int[] line = new int[size];
+        int[] tails = new int[size];
+        for (int row = 0; row < size; row++) {
+            int count = 0;
+            for (int col = 0; col < size; col++) {
+                int val = tiles[row * size + col];
+                if (val != 0 && (val - 1) / size == row) {
+                    line[count++] = (val - 1) % size;
+                }
+            }
+            sum += 2 * (count - longestIncreasing(line, count, tails));
+        }
+        for (int col = 0; col < size; col++) {
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                int val = tiles[row * size + col];
+                if (val != 0 && (val - 1) % size == col) {
+                    line[count++] = (val - 1) / size;
+                }
+            }
+            sum += 2 * (count - longestIncreasing(line, count, tails));
+        }
+        return sum;
+    }
+
+    /**
+     * Length of the longest increasing subsequence of the first count values.
+     */
+    private static int longestIncreasing(int[] values, int count, int[] tails) {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tails[mid] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            tails[lo] = values[i];
+            if (lo == length) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
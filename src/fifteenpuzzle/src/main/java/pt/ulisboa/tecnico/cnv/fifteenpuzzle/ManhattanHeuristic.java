@@ -0,0 +1,52 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+/**
+ * Sum of the distances of every tile to its goal position. A move changes the distance of one tile only,
+ * so the estimate of a board searched in place is updated by that tile's delta.
+ */
+final class ManhattanHeuristic implements PuzzleHeuristic {
+
+    private final int cells;
+    /**
+     * Distance of each tile (row) from each position (column) to its goal position.
+     */
+    private final int[] distances;
+
+    ManhattanHeuristic(int size) {
+        this.cells = size * size;
+        this.distances = new int[cells * cells];
+        for (int val = 1; val < cells; val++) {
+            int targetX = (val - 1) / size;
+            int targetY = (val - 1) % size;
+            for (int i = 0; i < cells; i++) {
+                distances[val * cells + i] = Math.abs(i / size - targetX) + Math.abs(i % size - targetY);
+            }
+        }
+    }
+
+    @Override
+    public int estimate(int[] tiles) {
+        int sum = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            sum += distances[tiles[i] * cells + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public Tracker track(int[] tiles) {
+        return new Tracker() {
+            private int value = estimate(tiles);
+
+            @Override
+            public int value() {
+                return value;
+            }
+
+            @Override
+            public void moved(int tile, int from, int to) {
+                value += distances[tile * cells + to] - distances[tile * cells + from];
+            }
+        };
+    }
+}
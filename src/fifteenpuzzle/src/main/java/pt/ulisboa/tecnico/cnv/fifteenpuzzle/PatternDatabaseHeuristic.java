@@ -0,0 +1,257 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Additive disjoint pattern databases. The tiles are split into groups, and for each group a table holds
+ * the fewest moves of the group's own tiles that bring them home from any placement, with the other tiles
+ * treated as indistinguishable. Since each table only counts moves of its own tiles, the values of the
+ * groups can be added together.
+ *
+ * The tables are built once per worker, on the first request for a board size, by a breadth-first search
+ * back from the solved board. A placement of a group is indexed by the positions of its tiles in base
+ * (size * size), one byte per entry.
+ */
+final class PatternDatabaseHeuristic implements PuzzleHeuristic {
+
+    /**
+     * Three groups of 5 tiles for the 4x4 board (3 tables of 1M entries).
+     */
+    private final static int[][] GROUPS_4 = {
+            {1, 2, 3, 5, 6},
+            {4, 7, 8, 11, 12},
+            {9, 10, 13, 14, 15}
+    };
+
+    /**
+     * Six groups of 4 tiles for the 5x5 board (6 tables of 390K entries).
+     */
+    private final static int[][] GROUPS_5 = {
+            {1, 2, 6, 7},
+            {3, 4, 8, 9},
+            {5, 10, 15, 20},
+            {11, 12, 16, 17},
+            {13, 14, 18, 19},
+            {21, 22, 23, 24}
+    };
+
+    private final static Map<Integer, PatternDatabaseHeuristic> DATABASES = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final int cells;
+    /**
+     * Group of each tile, and the weight of its position in the index of the group's table.
+     */
+    private final int[] groupOf;
+    private final int[] weightOf;
+    private final byte[][] tables;
+
+    private PatternDatabaseHeuristic(int size, int[][] groups) {
+        this.size = size;
+        this.cells = size * size;
+        this.groupOf = new int[cells];
+        this.weightOf = new int[cells];
+        this.tables = new byte[groups.length][];
+        for (int g = 0; g < groups.length; g++) {
+            int weight = 1;
+            for (int tile : groups[g]) {
+                groupOf[tile] = g;
+                weightOf[tile] = weight;
+                weight *= cells;
+            }
+            tables[g] = buildTable(groups[g]);
+        }
+    }
+
+    static boolean supports(int size) {
+        return size == 4 || size == 5;
+    }
+
+    /**
+     * Databases for the given size, built by the first caller and shared afterwards.
+     */
+    static PatternDatabaseHeuristic forSize(int size) {
+        if (!supports(size)) {
+            throw new IllegalArgumentException("No pattern databases for size " + size);
+        }
+        return DATABASES.computeIfAbsent(size,
+                s -> new PatternDatabaseHeuristic(s, s == 4 ? GROUPS_4 : GROUPS_5));
+    }
+
+    @Override
+    public int estimate(int[] tiles) {
+        int[] index = new int[tables.length];
+        for (int i = 0; i < tiles.length; i++) {
+            int val = tiles[i];
+            if (val != 0) {
+                index[groupOf[val]] += i * weightOf[val];
+            }
+        }
+        int sum = 0;
+        for (int g = 0; g < tables.length; g++) {
+            sum += tables[g][index[g]];
+        }
+        return sum;
+    }
+
+    /**
+     * Keeps the table index of every group, a move only shifts the index of the moved tile's group.
+     */
+    @Override
+    public Tracker track(int[] tiles) {
+        int[] index = new int[tables.length];
+        for (int i = 0; i < tiles.length; i++) {
+            int val = tiles[i];
+            if (val != 0) {
+                index[groupOf[val]] += i * weightOf[val];
+            }
+        }
+        return new Tracker() {
+            private int value = estimate(tiles);
+
+            @Override
+            public int value() {
+                return value;
+            }
+
+            @Override
+            public void moved(int tile, int from, int to) {
+                int g = groupOf[tile];
+                value -= tables[g][index[g]];
+                index[g] += (to - from) * weightOf[tile];
+                value += tables[g][index[g]];
+            }
+        };
+    }
+
+    /**
+     * Searches back from the solved board over (group placement, blank position) states. Moving the blank
+     * over a tile of the group costs one move and over any other tile costs nothing, so the search goes
+     * level by level, exhausting the free moves of a level before the next one.
+     */
+    private byte[] buildTable(int[] group) {
+        int placements = 1;
+        for (int i = 0; i < group.length; i++) {
+            placements *= cells;
+        }
+        int goal = 0;
+        int weight = 1;
+        for (int tile : group) {
+            goal += (tile - 1) * weight;
+            weight *= cells;
+        }
+
+        // Distance of each state (placement * cells + blank), -1 while unreached.
+        byte[] distances = new byte[placements * cells];
+        Arrays.fill(distances, (byte) -1);
+        int[] positions = new int[group.length];
+
+        IntStack level = new IntStack();
+        IntStack nextLevel = new IntStack();
+        int start = goal * cells + (cells - 1);
+        distances[start] = 0;
+        level.push(start);
+        for (int distance = 0; !level.isEmpty(); distance++) {
+            while (!level.isEmpty()) {
+                int state = level.pop();
+                if (distances[state] != distance) {
+                    continue;  // Reached for free after being queued for this level.
+                }
+                int placement = state / cells;
+                int blank = state % cells;
+                int rest = placement;
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = rest % cells;
+                    rest /= cells;
+                }
+                for (int move = 0; move < 4; move++) {
+                    int target = neighbor(blank, move);
+                    if (target < 0) {
+                        continue;
+                    }
+                    int slot = slotAt(positions, target);
+                    if (slot < 0) {
+                        int nextState = placement * cells + target;
+                        if (Byte.toUnsignedInt(distances[nextState]) > distance) {
+                            distances[nextState] = (byte) distance;
+                            level.push(nextState);
+                        }
+                    } else {
+                        int slotWeight = 1;
+                        for (int j = 0; j < slot; j++) {
+                            slotWeight *= cells;
+                        }
+                        int nextState = (placement + (blank - target) * slotWeight) * cells + target;
+                        if (Byte.toUnsignedInt(distances[nextState]) > distance + 1) {
+                            distances[nextState] = (byte) (distance + 1);
+                            nextLevel.push(nextState);
+                        }
+                    }
+                }
+            }
+            IntStack swap = level;
+            level = nextLevel;
+            nextLevel = swap;
+        }
+
+        // The blank can be anywhere, so a placement is worth its cheapest blank position.
+        byte[] table = new byte[placements];
+        for (int placement = 0; placement < placements; placement++) {
+            int best = 0xFF;
+            for (int blank = 0; blank < cells; blank++) {
+                best = Math.min(best, Byte.toUnsignedInt(distances[placement * cells + blank]));
+            }
+            table[placement] = (byte) best;
+        }
+        return table;
+    }
+
+    private int neighbor(int position, int move) {
+        int row = position / size;
+        int col = position % size;
+        switch (move) {
+            case 0:
+                return row > 0 ? position - size : -1;
+            case 1:
+                return row < size - 1 ? position + size : -1;
+            case 2:
+                return col > 0 ? position - 1 : -1;
+            default:
+                return col < size - 1 ? position + 1 : -1;
+        }
+    }
+
+    private static int slotAt(int[] positions, int position) {
+        for (int j = 0; j < positions.length; j++) {
+            if (positions[j] == position) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Growable stack of states.
+     */
+    private static final class IntStack {
+        private int[] values = new int[1024];
+        private int count;
+
+        void push(int value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+
+        int pop() {
+            return values[--count];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+/**
+ * Lower bound on the number of moves needed to solve a board. Every implementation is admissible,
+ * so IDA* finds an optimal solution with any of them, the stronger ones just expand fewer nodes.
+ */
+@FunctionalInterface
+public interface PuzzleHeuristic {
+
+    int estimate(int[] tiles);
+
+    /**
+     * Follows the estimate of a board that is modified in place, one move at a time. By default the
+     * estimate is recomputed after every move, heuristics that can update it incrementally override this.
+     */
+    default Tracker track(int[] tiles) {
+        return new Tracker() {
+            private int value = estimate(tiles);
+
+            @Override
+            public int value() {
+                return value;
+            }
+
+            @Override
+            public void moved(int tile, int from, int to) {
+                value = estimate(tiles);
+            }
+        };
+    }
+
+    /**
+     * Estimate of a board being searched in place.
+     */
+    interface Tracker {
+
+        int value();
+
+        /**
+         * Updates the estimate after the tile moved from one position to the other (the board is already updated).
+         */
+        void moved(int tile, int from, int to);
+    }
+
+    /**
+     * Strongest heuristic available for the given board size: additive pattern databases for 4x4 and 5x5
+     * boards, Manhattan distance with linear conflicts otherwise.
+     */
+    static PuzzleHeuristic strongest(int size) {
+        if (PatternDatabaseHeuristic.supports(size)) {
+            return PatternDatabaseHeuristic.forSize(size);
+        }
+        return new LinearConflictHeuristic(size);
+    }
+}
@@ -0,0 +1,160 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responses of solved puzzles. The board is always shuffled with the same seed, so a response is a pure
+ * function of the size and number of shuffles and never needs to be invalidated.
+ *
+ * Responses are kept UTF-8 encoded, in a least recently used map bounded by their total size in bytes
+ * (configurable with the fifteenpuzzle.cache.maxBytes system property). When the fifteenpuzzle.cache.dir system property is set,
+ * responses are also written to that directory, so they survive restarts and memory evictions.
+ */
+public class SolutionCache {
+
+    public final static long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final Path directory;
+    private long weight = 0;
+
+    private final LinkedHashMap<String, byte[]> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SolutionCache() {
+        this(Long.getLong("fifteenpuzzle.cache.maxBytes", DEFAULT_MAX_BYTES),
+                System.getProperty("fifteenpuzzle.cache.dir") == null ? null : Paths.get(System.getProperty("fifteenpuzzle.cache.dir")));
+    }
+
+    /**
+     * Creates a cache bounded to the given number of bytes, with no persistent tier if directory is null.
+     */
+    public SolutionCache(long maxBytes, Path directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Cached response for the puzzle, or null if it was never solved.
+     */
+    public String get(int size, int shuffles) {
+        String key = key(size, shuffles);
+        byte[] encoded;
+        synchronized (this) {
+            encoded = responses.get(key);
+        }
+        if (encoded != null) {
+            hits.incrementAndGet();
+            return new String(encoded, StandardCharsets.UTF_8);
+        }
+        encoded = read(key);
+        if (encoded != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, encoded);
+            return new String(encoded, StandardCharsets.UTF_8);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(int size, int shuffles, String response) {
+        String key = key(size, shuffles);
+        byte[] encoded = response.getBytes(StandardCharsets.UTF_8);
+        putInMemory(key, encoded);
+        write(key, encoded);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Solution cache: " + getHits() + " hits, " + getDiskHits() + " disk hits, " + getMisses() + " misses";
+    }
+
+    private synchronized void putInMemory(String key, byte[] encoded) {
+        if (encoded.length > maxBytes) {
+            return;
+        }
+        byte[] previous = responses.put(key, encoded);
+        if (previous != null) {
+            weight -= previous.length;
+        }
+        weight += encoded.length;
+
+        Iterator<byte[]> eldest = responses.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            weight -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private byte[] read(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(key + ".txt");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the response through a temporary file, so concurrent readers never see a partial one. The
+     * temporary file is deleted if it cannot be moved into place.
+     */
+    private void write(String key, byte[] encoded) {
+        if (directory == null) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, encoded);
+            Files.move(temporary, directory.resolve(key + ".txt"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static String key(int size, int shuffles) {
+        return size + "-" + shuffles;
+    }
+}
@@ -0,0 +1,134 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import java.util.Random;
+
+/**
+ * Fixed-size, open-addressed table of the boards expanded in the current IDA* iteration and the smallest
+ * number of moves (g) they were reached with. A board reached again with as many moves or more has
+ * already been searched with at least the same budget, so its subtree can be skipped.
+ *
+ * Boards up to 4x4 are keyed by their tiles packed into a long (4 bits each), larger ones by a 64-bit Zobrist
+ * hash of their tiles. Both are the XOR of a value per tile and position, so they are updated with two XORs per
+ * move, and only the hashes of larger boards can collide. Each key can only live in a few slots; when they
+ * are all taken by the current iteration, the entry reached with the most moves is replaced, since entries
+ * close to the root skip the largest subtrees. The size is configurable with the fifteenpuzzle.tt.entries
+ * system property.
+ */
+final class TranspositionTable {
+
+    public final static int DEFAULT_ENTRIES = Integer.getInteger("fifteenpuzzle.tt.entries", 1 << 18);
+
+    /**
+     * Fewest moves left to the threshold for a board to be looked up. Smaller subtrees are cheaper to search
+     * again than to look up.
+     */
+    final static int MIN_BUDGET = 6;
+
+    /**
+     * Slots a key can be stored in, starting at its home slot.
+     */
+    private final static int PROBES = 4;
+
+    private final long[] keys;
+    /**
+     * Iteration (high 16 bits) and g (low 16 bits) of each slot. Iterations start at 1, so empty slots are stale.
+     */
+    private final int[] entries;
+    private final int mask;
+    private final long[] zobrist;
+    private final int cells;
+    private int iteration;
+
+    TranspositionTable(int cells) {
+        this(cells, DEFAULT_ENTRIES);
+    }
+
+    TranspositionTable(int cells, int entries) {
+        int capacity = Integer.highestOneBit(Math.max(PROBES, entries));
+        this.keys = new long[capacity];
+        this.entries = new int[capacity];
+        this.mask = capacity - 1;
+        this.cells = cells;
+        this.zobrist = new long[cells * cells];
+        int bits = bitsPerTile(cells);
+        if (bits * cells <= Long.SIZE) {
+            // The packed encoding, the blank (tile 0) sets no bits.
+            for (int tile = 0; tile < cells; tile++) {
+                for (int position = 0; position < cells; position++) {
+                    zobrist[tile * cells + position] = (long) tile << (position * bits);
+                }
+            }
+        } else {
+            Random random = new Random(0x5EED);
+            for (int i = 0; i < zobrist.length; i++) {
+                zobrist[i] = random.nextLong();
+            }
+        }
+    }
+
+    /**
+     * Bits taken by each tile of a board with the given number of cells, when packed.
+     */
+    static int bitsPerTile(int cells) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(cells - 1));
+    }
+
+    long hash(int[] tiles) {
+        long hash = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            hash ^= zobrist(tiles[i], i);
+        }
+        return hash;
+    }
+
+    /**
+     * Key component of the given tile at the given position.
+     */
+    long zobrist(int tile, int position) {
+        return zobrist[tile * cells + position];
+    }
+
+    /**
+     * Starts a new iteration, all entries of the previous ones become stale.
+     */
+    void nextIteration() {
+        iteration++;
+    }
+
+    /**
+     * Returns true if the board was already expanded in this iteration with at most g moves, records it otherwise.
+     */
+    boolean visit(long key, int g) {
+        // Packed keys are far from uniform, so their bits are mixed before picking the slot.
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        int home = (int) (mixed >>> 32) & mask;
+        int victim = -1;
+        int victimG = -1;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            int entry = entries[slot];
+            boolean current = (entry >>> 16) == iteration;
+            if (current && keys[slot] == key) {
+                if ((entry & 0xFFFF) <= g) {
+                    return true;
+                }
+                entries[slot] = (iteration << 16) | g;
+                return false;
+            }
+            if (!current) {
+                if (victimG != Integer.MAX_VALUE) {
+                    victim = slot;
+                    victimG = Integer.MAX_VALUE;
+                }
+            } else if ((entry & 0xFFFF) > victimG) {
+                victim = slot;
+                victimG = entry & 0xFFFF;
+            }
+        }
+        if (victimG > g) {
+            keys[victim] = key;
+            entries[victim] = (iteration << 16) | g;
+        }
+        return false;
+    }
+}
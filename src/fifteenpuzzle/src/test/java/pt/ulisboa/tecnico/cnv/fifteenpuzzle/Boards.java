@@ -0,0 +1,65 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Boards and checks shared by the solver tests.
+ */
+final class Boards {
+
+    private Boards() {
+    }
+
+    static FifteenPuzzle shuffled(int size, int moves, long seed) {
+        FifteenPuzzle puzzle = new FifteenPuzzle(size);
+        puzzle.shuffle(moves, new Random(seed));
+        return puzzle;
+    }
+
+    static int[] solved(int size) {
+        return new FifteenPuzzle(size).tiles;
+    }
+
+    /**
+     * Checks that the solution starts from the given board, moves one tile into the blank at each step and
+     * ends solved.
+     */
+    static void assertSolves(FifteenPuzzle start, List<FifteenPuzzle> solution, int size) {
+        assertNotNull(solution);
+        assertArrayEquals(start.tiles, solution.get(0).tiles);
+        for (int step = 1; step < solution.size(); step++) {
+            int[] before = solution.get(step - 1).tiles;
+            int[] after = solution.get(step).tiles;
+            int from = blank(before);
+            int to = blank(after);
+            int distance = Math.abs(from / size - to / size) + Math.abs(from % size - to % size);
+            assertEquals(1, distance, "step " + step);
+            assertEquals(before[to], after[from], "step " + step);
+        }
+        assertArrayEquals(solved(size), solution.get(solution.size() - 1).tiles);
+    }
+
+    /**
+     * Asserts both solutions go through the same boards.
+     */
+    static void assertSameSolution(List<FifteenPuzzle> expected, List<FifteenPuzzle> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int step = 0; step < expected.size(); step++) {
+            assertArrayEquals(expected.get(step).tiles, actual.get(step).tiles, "step " + step);
+        }
+    }
+
+    static int blank(int[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No blank");
+    }
+}
@@ -0,0 +1,95 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FifteenPuzzleTest {
+
+    @Test
+    void inPlaceSolutionsAreOptimal() {
+        for (int size = 3; size <= 4; size++) {
+            for (long seed = 0; seed < 5; seed++) {
+                FifteenPuzzle puzzle = Boards.shuffled(size, 30, seed);
+                int optimal = puzzle.idaStarSolve().size() - 1;
+                for (PuzzleHeuristic heuristic : new PuzzleHeuristic[]{new ManhattanHeuristic(size), PuzzleHeuristic.strongest(size)}) {
+                    List<FifteenPuzzle> solution = puzzle.idaStarSolveInPlace(heuristic);
+                    Boards.assertSolves(puzzle, solution, size);
+                    assertEquals(optimal, solution.size() - 1, size + "x" + size + " seed " + seed);
+                }
+            }
+        }
+    }
+
+    @Test
+    void inPlaceSolveLeavesTheBoardUntouched() {
+        FifteenPuzzle puzzle = Boards.shuffled(4, 40, 1);
+        int[] before = puzzle.tiles.clone();
+        puzzle.idaStarSolveInPlace(PuzzleHeuristic.strongest(4));
+        assertArrayEquals(before, puzzle.tiles);
+        Boards.assertSolves(puzzle, puzzle.idaStarSolveInPlace(PuzzleHeuristic.strongest(4)), 4);
+    }
+
+    @Test
+    void solvedBoardNeedsNoMoves() {
+        FifteenPuzzle puzzle = new FifteenPuzzle(4);
+        assertEquals(1, puzzle.idaStarSolveInPlace(PuzzleHeuristic.strongest(4)).size());
+        assertEquals(1, puzzle.idaStarSolveParallel(PuzzleHeuristic.strongest(4), 4).size());
+    }
+
+    @Test
+    void stopsAtTheDeadlineWithALowerBound() {
+        PuzzleHeuristic heuristic = PuzzleHeuristic.strongest(5);
+        FifteenPuzzle puzzle = Boards.shuffled(5, 300, 3);
+        puzzle.setDeadline(System.nanoTime());
+        DeadlineExceededException serial = assertThrows(DeadlineExceededException.class,
+                () -> puzzle.idaStarSolveInPlace(heuristic));
+        assertTrue(serial.getLowerBound() >= heuristic.estimate(puzzle.tiles));
+        DeadlineExceededException parallel = assertThrows(DeadlineExceededException.class,
+                () -> puzzle.idaStarSolveParallel(heuristic, 4));
+        assertTrue(parallel.getLowerBound() >= heuristic.estimate(puzzle.tiles));
+    }
+
+    @Test
+    void solvesBeforeALaterDeadline() {
+        FifteenPuzzle puzzle = Boards.shuffled(4, 40, 2);
+        puzzle.setDeadline(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        Boards.assertSolves(puzzle, puzzle.idaStarSolveInPlace(PuzzleHeuristic.strongest(4)), 4);
+    }
+
+    @Test
+    void stopsWhenCancelled() {
+        FifteenPuzzle puzzle = Boards.shuffled(5, 300, 3);
+        puzzle.setCancellation(new AtomicBoolean(true));
+        assertThrows(CancellationException.class, () -> puzzle.idaStarSolveInPlace(PuzzleHeuristic.strongest(5)));
+        assertThrows(CancellationException.class, () -> puzzle.idaStarSolveParallel(PuzzleHeuristic.strongest(5), 4));
+    }
+
+    /**
+     * Puzzles are solved on up to 4 threads, see the surefire configuration.
+     */
+    @Test
+    void parallelSolveFindsTheSerialSolution() {
+        assertTrue(FifteenPuzzle.WORKER_PARALLELISM >= 4);
+        for (int size = 3; size <= 4; size++) {
+            PuzzleHeuristic heuristic = PuzzleHeuristic.strongest(size);
+            for (long seed = 0; seed < 8; seed++) {
+                FifteenPuzzle puzzle = Boards.shuffled(size, 60, seed);
+                List<FifteenPuzzle> serial = puzzle.idaStarSolveInPlace(heuristic);
+                for (int parallelism : new int[]{2, 4}) {
+                    List<FifteenPuzzle> parallel = puzzle.idaStarSolveParallel(heuristic, parallelism);
+                    Boards.assertSolves(puzzle, parallel, size);
+                    Boards.assertSameSolution(serial, parallel);
+                }
+            }
+        }
+    }
+}
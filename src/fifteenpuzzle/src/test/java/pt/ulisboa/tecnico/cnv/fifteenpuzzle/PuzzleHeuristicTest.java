@@ -0,0 +1,136 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PuzzleHeuristicTest {
+
+    /**
+     * Exact distance to the solved board of every solvable 3x3 board, by breadth-first search back from it.
+     */
+    private static Map<Long, Integer> distances3x3() {
+        Map<Long, Integer> distances = new HashMap<>();
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        int[] solved = Boards.solved(3);
+        distances.put(pack(solved), 0);
+        queue.add(solved);
+        while (!queue.isEmpty()) {
+            int[] board = queue.poll();
+            int distance = distances.get(pack(board));
+            int blank = Boards.blank(board);
+            for (int move : neighbors(blank, 3)) {
+                int[] next = board.clone();
+                next[blank] = next[move];
+                next[move] = 0;
+                if (distances.putIfAbsent(pack(next), distance + 1) == null) {
+                    queue.add(next);
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static long pack(int[] tiles) {
+        long packed = 0;
+        for (int tile : tiles) {
+            packed = packed * tiles.length + tile;
+        }
+        return packed;
+    }
+
+    private static int[] unpack(long packed, int cells) {
+        int[] tiles = new int[cells];
+        for (int i = cells - 1; i >= 0; i--) {
+            tiles[i] = (int) (packed % cells);
+            packed /= cells;
+        }
+        return tiles;
+    }
+
+    private static int[] neighbors(int blank, int size) {
+        int row = blank / size;
+        int col = blank % size;
+        int[] moves = new int[4];
+        int count = 0;
+        if (row > 0) moves[count++] = blank - size;
+        if (row < size - 1) moves[count++] = blank + size;
+        if (col > 0) moves[count++] = blank - 1;
+        if (col < size - 1) moves[count++] = blank + 1;
+        return Arrays.copyOf(moves, count);
+    }
+
+    @Test
+    void linearConflictsAreAdmissibleAndDominateManhattan() {
+        PuzzleHeuristic manhattan = new ManhattanHeuristic(3);
+        PuzzleHeuristic linearConflict = new LinearConflictHeuristic(3);
+        Map<Long, Integer> distances = distances3x3();
+        assertEquals(181_440, distances.size());
+        for (Map.Entry<Long, Integer> entry : distances.entrySet()) {
+            int[] tiles = unpack(entry.getKey(), 9);
+            int estimate = linearConflict.estimate(tiles);
+            assertTrue(estimate <= entry.getValue());
+            assertTrue(estimate >= manhattan.estimate(tiles));
+        }
+    }
+
+    @Test
+    void patternDatabasesAreAdmissibleAndDominateManhattan() {
+        PuzzleHeuristic manhattan = new ManhattanHeuristic(4);
+        PuzzleHeuristic patterns = PatternDatabaseHeuristic.forSize(4);
+        assertEquals(0, patterns.estimate(Boards.solved(4)));
+        for (long seed = 0; seed < 10; seed++) {
+            FifteenPuzzle puzzle = Boards.shuffled(4, 40, seed);
+            int optimal = puzzle.idaStarSolveInPlace(manhattan).size() - 1;
+            int estimate = patterns.estimate(puzzle.tiles);
+            assertTrue(estimate <= optimal, "seed " + seed);
+            assertTrue(estimate >= manhattan.estimate(puzzle.tiles), "seed " + seed);
+        }
+    }
+
+    @Test
+    void trackersFollowTheEstimate() {
+        for (int size = 3; size <= 5; size++) {
+            PuzzleHeuristic[] heuristics = PatternDatabaseHeuristic.supports(size)
+                    ? new PuzzleHeuristic[]{new ManhattanHeuristic(size), new LinearConflictHeuristic(size), PatternDatabaseHeuristic.forSize(size)}
+                    : new PuzzleHeuristic[]{new ManhattanHeuristic(size), new LinearConflictHeuristic(size)};
+            for (PuzzleHeuristic heuristic : heuristics) {
+                int[] board = Boards.shuffled(size, 100, size).tiles;
+                PuzzleHeuristic.Tracker tracker = heuristic.track(board);
+                Random random = new Random(size);
+                int blank = Boards.blank(board);
+                for (int step = 0; step < 500; step++) {
+                    int[] moves = neighbors(blank, size);
+                    int move = moves[random.nextInt(moves.length)];
+                    int tile = board[move];
+                    board[blank] = tile;
+                    board[move] = 0;
+                    tracker.moved(tile, move, blank);
+                    blank = move;
+                    assertEquals(heuristic.estimate(board), tracker.value(), heuristic.getClass().getSimpleName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void everyHeuristicFindsAnOptimalSolution() {
+        for (long seed = 0; seed < 5; seed++) {
+            FifteenPuzzle puzzle = Boards.shuffled(4, 30, seed);
+            int optimal = puzzle.idaStarSolve().size() - 1;
+            for (PuzzleHeuristic heuristic : new PuzzleHeuristic[]{new LinearConflictHeuristic(4), PuzzleHeuristic.strongest(4)}) {
+                List<FifteenPuzzle> solution = puzzle.idaStarSolve(heuristic);
+                Boards.assertSolves(puzzle, solution, 4);
+                assertEquals(optimal, solution.size() - 1, "seed " + seed);
+            }
+        }
+    }
+}
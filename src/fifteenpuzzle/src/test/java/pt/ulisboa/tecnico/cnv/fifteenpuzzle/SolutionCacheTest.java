@@ -0,0 +1,83 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SolutionCacheTest {
+
+    @Test
+    void servesSolvedPuzzles() {
+        SolutionCache cache = new SolutionCache(1024, null);
+        assertNull(cache.get(4, 10));
+        cache.put(4, 10, "10 moves");
+        assertEquals("10 moves", cache.get(4, 10));
+        assertNull(cache.get(4, 11));
+        assertNull(cache.get(5, 10));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void boundsTheEncodedBytes() {
+        SolutionCache cache = new SolutionCache(10, null);
+        // 5 characters, 10 bytes in UTF-8
+        cache.put(4, 1, "ééééé");
+        assertEquals("ééééé", cache.get(4, 1));
+        cache.put(4, 2, "x");
+        assertNull(cache.get(4, 1));
+        assertEquals("x", cache.get(4, 2));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        SolutionCache cache = new SolutionCache(3, null);
+        cache.put(4, 1, "a");
+        cache.put(4, 2, "b");
+        cache.put(4, 3, "c");
+        cache.get(4, 1);
+        cache.put(4, 4, "d");
+        assertEquals("a", cache.get(4, 1));
+        assertNull(cache.get(4, 2));
+        assertEquals("c", cache.get(4, 3));
+        assertEquals("d", cache.get(4, 4));
+    }
+
+    @Test
+    void skipsResponsesLargerThanTheBound() {
+        SolutionCache cache = new SolutionCache(3, null);
+        cache.put(4, 1, "a");
+        cache.put(4, 2, "abcd");
+        assertNull(cache.get(4, 2));
+        assertEquals("a", cache.get(4, 1));
+    }
+
+    @Test
+    void keepsResponsesOnDisk(@TempDir Path directory) throws IOException {
+        SolutionCache cache = new SolutionCache(1024, directory);
+        cache.put(4, 10, "10 moves");
+        cache.put(4, 10, "still 10 moves");
+        cache.put(4, 20, "larger than the memory bound of the next cache");
+
+        // as after a restart, with responses evicted from memory
+        SolutionCache restarted = new SolutionCache(1, directory);
+        assertEquals("still 10 moves", restarted.get(4, 10));
+        assertEquals("larger than the memory bound of the next cache", restarted.get(4, 20));
+        assertNull(restarted.get(4, 30));
+        assertEquals(2, restarted.getDiskHits());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            List<String> names = files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals(List.of("4-10.txt", "4-20.txt"), names);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package pt.ulisboa.tecnico.cnv.fifteenpuzzle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranspositionTableTest {
+
+    @Test
+    void skipsBoardsReachedAgainWithNoFewerMoves() {
+        TranspositionTable table = new TranspositionTable(16, 64);
+        table.nextIteration();
+        assertFalse(table.visit(42, 7));
+        assertTrue(table.visit(42, 7));
+        assertTrue(table.visit(42, 9));
+        assertFalse(table.visit(42, 5));
+        assertTrue(table.visit(42, 5));
+
+        table.nextIteration();
+        assertFalse(table.visit(42, 9));
+    }
+
+    @Test
+    void movesUpdateTheKeyWithXors() {
+        for (int size = 3; size <= 5; size++) {
+            int cells = size * size;
+            TranspositionTable table = new TranspositionTable(cells, 64);
+            int[] board = Boards.shuffled(size, 200, size).tiles;
+            long key = table.hash(board);
+            int blank = Boards.blank(board);
+            // slides the tile right of or below the blank into it
+            int move = (blank % size < size - 1) ? blank + 1 : blank - size;
+            int tile = board[move];
+            board[blank] = tile;
+            board[move] = 0;
+            key ^= table.zobrist(tile, move) ^ table.zobrist(tile, blank) ^ table.zobrist(0, blank) ^ table.zobrist(0, move);
+            assertEquals(table.hash(board), key, size + "x" + size);
+        }
+    }
+
+    @Test
+    void packedKeysAreExact() {
+        assertEquals(4, TranspositionTable.bitsPerTile(9));
+        assertEquals(4, TranspositionTable.bitsPerTile(16));
+        assertEquals(5, TranspositionTable.bitsPerTile(25));
+
+        TranspositionTable table = new TranspositionTable(16, 64);
+        Map<Long, int[]> boards = new HashMap<>();
+        for (long seed = 0; seed < 2000; seed++) {
+            int[] board = Boards.shuffled(4, 60, seed).tiles;
+            int[] previous = boards.put(table.hash(board), board);
+            if (previous != null) {
+                assertArrayEquals(previous, board);
+            }
+        }
+    }
+
+    @Test
+    void solutionIsTheSameWithTheTable() {
+        for (int size = 3; size <= 5; size++) {
+            PuzzleHeuristic heuristic = PuzzleHeuristic.strongest(size);
+            for (long seed = 0; seed < 5; seed++) {
+                FifteenPuzzle puzzle = Boards.shuffled(size, size == 5 ? 40 : 60, seed);
+                Boards.assertSameSolution(puzzle.idaStarSolveInPlace(heuristic, false),
+                        puzzle.idaStarSolveInPlace(heuristic, true));
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Game of Life engine that stores 64 cells per long and computes a whole word of cells at a time.
+ *
+ * The grid keeps the wrap semantics of {@link GameOfLife}: cells are treated as a 1d ring of
+ * width * height cells, so the neighbours of cell p are p +/- 1, p +/- width and p +/- width +/- 1.
+ * The ring is stored between two halo regions holding copies of its ends, which lets every
+ * neighbour word be read with a plain (possibly unaligned) 64-bit load.
+ *
+ * Large grids can be stepped in parallel: the ring is split into horizontal bands of whole words that
+ * are computed concurrently on a pool shared by all requests. Each band only reads the previous
+ * generation, and joining the bands acts as the barrier before the halo is refilled.
+ *
+ * Boards where little changes between generations (gliders and oscillators on a large board) are
+ * stepped sparsely: the engine keeps the words that changed in the last generation and only
+ * recomputes those and the words holding their neighbours. When too many words change it falls
+ * back to stepping every word.
+ */
+public class BitPackedGameOfLife implements GameOfLifeEngine {
+
+    /**
+     * Worker-wide bound on the threads stepping bands, shared by all concurrent requests.
+     * Configurable with the gameoflife.parallelism system property.
+     */
+    public final static int WORKER_PARALLELISM = Math.max(1,
+            Integer.getInteger("gameoflife.parallelism", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Minimum number of words in a band, below this the fork-join overhead outweighs the gain.
+     */
+    private final static int MIN_BAND_WORDS = 1024;
+
+    /**
+     * Boards are stepped sparsely while fewer than 1 / SPARSE_FRACTION of their words changed.
+     * A changed word makes at most 12 words recompute, so sparse steps never cost more than dense ones.
+     */
+    private final static int SPARSE_FRACTION = 16;
+
+    private final static ForkJoinPool BAND_POOL = new ForkJoinPool(WORKER_PARALLELISM);
+
+    private final int width;
+    private final int height;
+    private final int size;
+    /**
+     * Number of halo bits on each side of the ring. Word-aligned and at least width + 1.
+     */
+    private final int halo;
+    private final int haloWords;
+    private final int interiorWords;
+    /**
+     * Bit offsets of the neighbours of a cell. Offsets that wrap back onto the cell itself are left
+     * out, just like in {@link GameOfLife}.
+     */
+    private final int[] neighborOffsets;
+
+    /**
+     * Mask of the ring bits of the last interior word, the rest is padding.
+     */
+    private final long lastWordMask;
+
+    private long[] current;
+    private long[] next;
+
+    /**
+     * Hash of the interior words, kept up to date as words change.
+     */
+    private long interiorHash;
+
+    /**
+     * Interior words that changed in the last generation.
+     */
+    private final int[] changedWords;
+    private int changedCount;
+
+    /**
+     * Words to recompute in a sparse step, deduplicated by stamping them with the step number.
+     * Allocated on the first sparse step.
+     */
+    private int[] candidateStamps;
+    private int[] candidates;
+    private long[] candidateValues;
+    private int stamp;
+
+    private int cyclePeriod;
+    private int cycleDetectedAt;
+
+    /**
+     * Checked every generation when set, see {@link #setCancellation(AtomicBoolean)}.
+     */
+    private AtomicBoolean cancelled;
+
+    /**
+     * Word boundaries of the bands stepped in parallel, bands + 1 entries.
+     */
+    private final int[] bandBounds;
+
+    /**
+     * Constructs a new engine that steps with the worker-wide parallelism.
+     */
+    public BitPackedGameOfLife(int width, int height, byte[] data) {
+        this(width, height, data, WORKER_PARALLELISM);
+    }
+
+    /**
+     * Constructs a new engine that steps on at most the given number of bands.
+     */
+    public BitPackedGameOfLife(int width, int height, byte[] data, int parallelism) {
+        if (!supports(width, height, data)) {
+            throw new IllegalArgumentException("Bit-packed engine requires a non-empty grid of 0/1 cells");
+        }
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+        this.halo = roundUpToWord(width + 1);
+        this.haloWords = halo >>> 6;
+        this.interiorWords = (size + 63) >>> 6;
+        this.neighborOffsets = computeNeighborOffsets(width, size);
+        this.current = new long[2 * haloWords + interiorWords];
+        this.next = new long[current.length];
+        this.bandBounds = computeBandBounds(interiorWords, Math.min(parallelism, WORKER_PARALLELISM));
+        this.lastWordMask = (size & 63) == 0 ? -1L : (1L << size) - 1;
+
+        for (int i = 0; i < size; i++) {
+            if (data[i] == GameOfLife.ALIVE) {
+                int bit = halo + i;
+                current[bit >>> 6] |= 1L << bit;
+            }
+        }
+        fillHalo(current);
+
+        // Every word counts as changed, so the first generation is stepped densely.
+        this.changedWords = new int[interiorWords];
+        for (int w = 0; w < interiorWords; w++) {
+            changedWords[w] = w;
+            interiorHash += hashWord(w, current[haloWords + w]);
+        }
+        this.changedCount = interiorWords;
+    }
+
+    /**
+     * The packed representation only holds dead or alive cells, other cell values need the byte engine.
+     */
+    public static boolean supports(int width, int height, byte[] data) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        for (byte cell : data) {
+            if (cell != GameOfLife.ALIVE && cell != GameOfLife.DEAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plays the given number of generations, stopping early once the board repeats itself.
+     * Uses the same checkpoint hashing as {@link GameOfLife#play(int)} over the packed words.
+     */
+    @Override
+    public void play(int iterations) {
+        cyclePeriod = 0;
+        cycleDetectedAt = 0;
+        int from = haloWords;
+        int to = haloWords + interiorWords;
+        long[] checkpoint = Arrays.copyOfRange(current, from, to);
+        long checkpointHash = interiorHash;
+        int checkpointGeneration = 0;
+        int power = 1;
+        for (int i = 0; i < iterations; i++) {
+            checkCancelled();
+            iterate();
+            int generation = i + 1;
+            long hash = interiorHash;
+            if (hash == checkpointHash && Arrays.equals(current, from, to, checkpoint, 0, interiorWords)) {
+                cyclePeriod = generation - checkpointGeneration;
+                cycleDetectedAt = generation;
+                int remaining = (iterations - generation) % cyclePeriod;
+                for (int j = 0; j < remaining; j++) {
+                    checkCancelled();
+                    iterate();
+                }
+                return;
+            }
+            if (generation - checkpointGeneration == power) {
+                System.arraycopy(current, from, checkpoint, 0, interiorWords);
+                checkpointHash = hash;
+                checkpointGeneration = generation;
+                power <<= 1;
+            }
+        }
+    }
+
+    @Override
+    public void setCancellation(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    private void checkCancelled() {
+        if (cancelled != null && cancelled.get()) {
+            throw new CancellationException("Game cancelled");
+        }
+    }
+
+    /**
+     * Contribution of an interior word to the interior hash. The hash is a sum of these, so it can be
+     * updated word by word. Padding bits are left out.
+     */
+    private long hashWord(int w, long value) {
+        long z = (value & wordMask(w)) ^ (w * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 31)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 29);
+    }
+
+    private long wordMask(int w) {
+        return w == interiorWords - 1 ? lastWordMask : -1L;
+    }
+
+    /**
+     * Iterates the game one step forward.
+     */
+    private void iterate() {
+        if ((long) changedCount * SPARSE_FRACTION < interiorWords) {
+            iterateSparse();
+        } else {
+            iterateDense();
+        }
+    }
+
+    /**
+     * Steps every word into the next buffer, in parallel bands if the board is large enough.
+     */
+    private void iterateDense() {
+        if (bandBounds.length > 2) {
+            BAND_POOL.invoke(new GenerationTask());
+        } else {
+            stepWords(0, interiorWords);
+        }
+        fillHalo(next);
+
+        changedCount = 0;
+        for (int w = 0; w < interiorWords; w++) {
+            long before = current[haloWords + w];
+            long after = next[haloWords + w];
+            if (((before ^ after) & wordMask(w)) != 0) {
+                changedWords[changedCount++] = w;
+                interiorHash += hashWord(w, after) - hashWord(w, before);
+            }
+        }
+        long[] cur = current;
+        current = next;
+        next = cur;
+    }
+
+    /**
+     * Steps only the words around the ones that changed in the last generation. The rest cannot change.
+     * The new values are computed before any is written back, so the current buffer is updated in place.
+     */
+    private void iterateSparse() {
+        if (candidates == null) {
+            candidateStamps = new int[interiorWords];
+            candidates = new int[interiorWords];
+            candidateValues = new long[interiorWords];
+        }
+        if (++stamp == 0) {
+            Arrays.fill(candidateStamps, 0);
+            stamp = 1;
+        }
+
+        int count = 0;
+        for (int i = 0; i < changedCount; i++) {
+            count = addNeighborhood(changedWords[i], count);
+        }
+        for (int i = 0; i < count; i++) {
+            candidateValues[i] = stepWord(current, candidates[i]);
+        }
+
+        changedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int w = candidates[i];
+            long before = current[haloWords + w];
+            long after = candidateValues[i];
+            current[haloWords + w] = after;
+            if (((before ^ after) & wordMask(w)) != 0) {
+                changedWords[changedCount++] = w;
+                interiorHash += hashWord(w, after) - hashWord(w, before);
+            }
+        }
+        fillHalo(current);
+    }
+
+    /**
+     * Adds to the candidates the given word and every word holding a neighbour of one of its cells.
+     */
+    private int addNeighborhood(int word, int count) {
+        int first = word << 6;
+        int last = Math.min(first + 63, size - 1);
+        count = addCandidate(word, count);
+        for (int offset : neighborOffsets) {
+            int lo = Math.floorMod(first + offset, size);
+            int hi = Math.floorMod(last + offset, size);
+            // At most 64 cells, so at most two words, or the two words at each end of the ring if it wraps.
+            count = addCandidate(lo >>> 6, count);
+            count = addCandidate(hi >>> 6, count);
+            if (lo > hi) {
+                count = addCandidate((size - 1) >>> 6, count);
+                count = addCandidate(0, count);
+            }
+        }
+        return count;
+    }
+
+    private int addCandidate(int word, int count) {
+        if (candidateStamps[word] != stamp) {
+            candidateStamps[word] = stamp;
+            candidates[count++] = word;
+        }
+        return count;
+    }
+
+    /**
+     * Computes the next generation of the interior words in [from, to).
+     */
+    private void stepWords(int from, int to) {
+        long[] cur = current;
+        long[] nxt = next;
+        for (int w = from; w < to; w++) {
+            nxt[haloWords + w] = stepWord(cur, w);
+        }
+    }
+
+    /**
+     * Computes the next generation of an interior word.
+     */
+    private long stepWord(long[] cur, int w) {
+        int base = halo + (w << 6);
+        // Three-bit counter of alive neighbours (modulo 8) per cell, built with half adders.
+        long s0 = 0, s1 = 0, s2 = 0;
+        for (int offset : neighborOffsets) {
+            long x = readWord(cur, base + offset);
+            long c0 = s0 & x;
+            s0 ^= x;
+            long c1 = s1 & c0;
+            s1 ^= c0;
+            s2 ^= c1;
+        }
+        long alive = cur[haloWords + w];
+        // Alive next generation with exactly 3 neighbours, or with 2 if already alive.
+        return s1 & ~s2 & (s0 | alive);
+    }
+
+    /**
+     * Steps every band of one generation and returns once all of them are done.
+     */
+    private final class GenerationTask extends RecursiveAction {
+        @Override
+        protected void compute() {
+            List<BandTask> bands = new ArrayList<>(bandBounds.length - 1);
+            for (int band = 0; band < bandBounds.length - 1; band++) {
+                bands.add(new BandTask(bandBounds[band], bandBounds[band + 1]));
+            }
+            ForkJoinTask.invokeAll(bands);
+        }
+    }
+
+    private final class BandTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        BandTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            stepWords(from, to);
+        }
+    }
+
+    private static int[] computeBandBounds(int words, int parallelism) {
+        int bands = Math.max(1, Math.min(parallelism, words / MIN_BAND_WORDS));
+        int[] bounds = new int[bands + 1];
+        for (int band = 0; band <= bands; band++) {
+            bounds[band] = (int) ((long) words * band / bands);
+        }
+        return bounds;
+    }
+
+    /**
+     * Copies the ends of the ring into the halo regions around it.
+     */
+    private void fillHalo(long[] buffer) {
+        // Left halo holds the last cells of the ring.
+        copyRingToBits(buffer, size - halo, 0);
+        // Right halo holds the first cells of the ring (also clears the padding of the last word).
+        copyRingToBits(buffer, 0, halo + size);
+    }
+
+    /**
+     * Copies halo bits starting at ring position (possibly negative) into buffer starting at dstBit.
+     */
+    private void copyRingToBits(long[] buffer, int ringStart, int dstBit) {
+        int copied = 0;
+        while (copied < halo) {
+            int cell = Math.floorMod(ringStart + copied, size);
+            int length = Math.min(64, Math.min(halo - copied, size - cell));
+            writeBits(buffer, dstBit + copied, readWord(buffer, halo + cell), length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Reads the 64 bits starting at the given bit position.
+     */
+    private static long readWord(long[] buffer, int bit) {
+        int index = bit >>> 6;
+        int shift = bit & 63;
+        if (shift == 0) {
+            return buffer[index];
+        }
+        return (buffer[index] >>> shift) | (buffer[index + 1] << (64 - shift));
+    }
+
+    /**
+     * Writes the lowest length bits of value starting at the given bit position.
+     */
+    private static void writeBits(long[] buffer, int bit, long value, int length) {
+        int index = bit >>> 6;
+        int shift = bit & 63;
+        long mask = length == 64 ? -1L : (1L << length) - 1;
+        value &= mask;
+        buffer[index] = (buffer[index] & ~(mask << shift)) | (value << shift);
+        if (shift + length > 64) {
+            int spill = 64 - shift;
+            buffer[index + 1] = (buffer[index + 1] & ~(mask >>> spill)) | (value >>> spill);
+        }
+    }
+
+    private static int roundUpToWord(int bits) {
+        return (bits + 63) & ~63;
+    }
+
+    private static int[] computeNeighborOffsets(int width, int size) {
+        int[] offsets = new int[8];
+        int count = 0;
+        for (int col = -1; col <= 1; col++) {
+            for (int row = -1; row <= 1; row++) {
+                int offset = row * width + col;
+                if (Math.floorMod(offset, size) != 0) {
+                    offsets[count++] = offset;
+                }
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    @Override
+    public byte[] getData() {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int bit = halo + i;
+            data[i] = (byte) ((current[bit >>> 6] >>> bit) & 1L);
+        }
+        return data;
+    }
+
+    @Override
+    public int getCyclePeriod() {
+        return cyclePeriod;
+    }
+
+    @Override
+    public int getCycleDetectedAt() {
+        return cycleDetectedAt;
+    }
+
+    @Override
+    public String gridToString() {
+        return GameOfLife.gridToString(getData(), width, height);
+    }
+}
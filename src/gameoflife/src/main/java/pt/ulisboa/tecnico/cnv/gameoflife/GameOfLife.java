@@ -1,15 +1,18 @@
 package pt.ulisboa.tecnico.cnv.gameoflife;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Inspired by: https://www.algosome.com/articles/conway-game-of-life-2d.html
  * Read more details and rules here: https://en.wikipedia.org/wiki/Conway%27s_Game_of_Life
  */
-public class GameOfLife {
+public class GameOfLife implements GameOfLifeEngine {
 
-    private final static byte ALIVE = 1;
-    private final static byte DEAD = 0;
+    final static byte ALIVE = 1;
+    final static byte DEAD = 0;
 
     private final int width;
     private final int height;
@@ -19,6 +22,14 @@ public class GameOfLife {
      */
     private byte[] data;
 
+    private int cyclePeriod;
+    private int cycleDetectedAt;
+
+    /**
+     * Checked every generation when set, see {@link #setCancellation(AtomicBoolean)}.
+     */
+    private AtomicBoolean cancelled;
+
     /**
      * Constructs a new Game of Life with the specified dimensions.
      */
@@ -29,9 +40,54 @@ public class GameOfLife {
         this.data = data;
     }
 
+    /**
+     * Plays the given number of generations, stopping early once the board repeats itself.
+     *
+     * The board is hashed every generation and compared against a checkpoint that is moved forward at
+     * power-of-two distances (Brent's cycle detection), so only one extra board is kept. When the board
+     * matches the checkpoint, the distance between both is the period and only the remaining generations
+     * modulo that period are simulated.
+     */
+    @Override
     public void play(int iterations) {
+        cyclePeriod = 0;
+        cycleDetectedAt = 0;
+        byte[] checkpoint = Arrays.copyOf(data, size);
+        int checkpointHash = Arrays.hashCode(checkpoint);
+        int checkpointGeneration = 0;
+        int power = 1;
         for (int i = 0; i < iterations; i++) {
+            checkCancelled();
             iterate();
+            int generation = i + 1;
+            int hash = Arrays.hashCode(data);
+            if (hash == checkpointHash && Arrays.equals(data, checkpoint)) {
+                cyclePeriod = generation - checkpointGeneration;
+                cycleDetectedAt = generation;
+                int remaining = (iterations - generation) % cyclePeriod;
+                for (int j = 0; j < remaining; j++) {
+                    checkCancelled();
+                    iterate();
+                }
+                return;
+            }
+            if (generation - checkpointGeneration == power) {
+                System.arraycopy(data, 0, checkpoint, 0, size);
+                checkpointHash = hash;
+                checkpointGeneration = generation;
+                power <<= 1;
+            }
+        }
+    }
+
+    @Override
+    public void setCancellation(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    private void checkCancelled() {
+        if (cancelled != null && cancelled.get()) {
+            throw new CancellationException("Game cancelled");
         }
     }
 
@@ -96,7 +152,12 @@ public class GameOfLife {
         }
     }
 
+    @Override
     public String gridToString() {
+        return gridToString(data, width, height);
+    }
+
+    static String gridToString(byte[] data, int width, int height) {
         StringBuilder sb = new StringBuilder();
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
@@ -107,7 +168,18 @@ public class GameOfLife {
         return sb.toString().replace("1", " +").replace("0", " -"); // You can also use ⬛ ⬜.
     }
 
+    @Override
     public byte[] getData() {
         return data;
     }
+
+    @Override
+    public int getCyclePeriod() {
+        return cyclePeriod;
+    }
+
+    @Override
+    public int getCycleDetectedAt() {
+        return cycleDetectedAt;
+    }
 }
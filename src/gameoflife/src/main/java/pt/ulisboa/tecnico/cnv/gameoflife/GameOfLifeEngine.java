@@ -0,0 +1,37 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Common contract of the Game of Life implementations that can serve a request.
+ * All engines follow the wrap semantics of {@link GameOfLife}, so they are interchangeable.
+ */
+public interface GameOfLifeEngine {
+
+    /**
+     * Advances the game the given number of generations.
+     */
+    void play(int iterations);
+
+    /**
+     * Makes play throw a CancellationException soon after the flag is set.
+     */
+    void setCancellation(AtomicBoolean cancelled);
+
+    /**
+     * Returns the current grid in 1d (row-major) format.
+     */
+    byte[] getData();
+
+    /**
+     * Period of the cycle the board fell into during the last play, or 0 if no cycle was detected.
+     */
+    int getCyclePeriod();
+
+    /**
+     * Generation at which the cycle was detected and the remaining generations were skipped, or 0 if none.
+     */
+    int getCycleDetectedAt();
+
+    String gridToString();
+}
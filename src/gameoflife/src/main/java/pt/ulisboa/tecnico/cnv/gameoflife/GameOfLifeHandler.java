@@ -1,83 +1,80 @@
 package pt.ulisboa.tecnico.cnv.gameoflife;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 
 import pt.ulisboa.tecnico.cnv.javassist.tools.ICount;
 import pt.ulisboa.tecnico.cnv.javassist.model.Statistics;
+import pt.ulisboa.tecnico.cnv.storage.RequestRegistry;
 import pt.ulisboa.tecnico.cnv.storage.StorageUtil;
 
 
 public class GameOfLifeHandler implements HttpHandler, RequestHandler<Map<String, String>, String> {
 
-    private final static ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Name of the engine that stores one cell per byte.
+     */
+    private final static String CLASSIC_ENGINE = "classic";
 
     /**
-     * Input map model.
+     * Name of the engine that stores 64 cells per long.
      */
-    private static class GameOfLifeInput {
-        public int[][] map;
+    private final static String BITPACKED_ENGINE = "bitpacked";
 
-        public GameOfLifeInput(int[][] map) {
-            this.map = map;
-        }
+    /**
+     * Name of the quadtree engine that jumps many generations at once.
+     */
+    private final static String HASHLIFE_ENGINE = "hashlife";
 
-        public GameOfLifeInput() {}
-    }
+    /**
+     * Response header with the period of the cycle the board fell into, if one was detected.
+     */
+    public final static String CYCLE_PERIOD_HEADER = "X-Cycle-Period";
 
     /**
-     * Output (response) model.
+     * Response header with the generation at which the cycle was detected and the rest was skipped.
      */
-    private static class GameOfLifeResponse {
-        public int[][] inputMap;
-        public int[][] outputMap;
+    public final static String CYCLE_DETECTED_AT_HEADER = "X-Cycle-Detected-At";
 
-        public GameOfLifeResponse(int[][] inputMap, int[][] outputMap) {
-            this.inputMap = inputMap;
-            this.outputMap = outputMap;
-        }
+    /**
+     * Finished games kept by the hosting server, or null when results are not cached (e.g. on Lambda).
+     */
+    private final GameOfLifeResultCache resultCache;
 
-        public GameOfLifeResponse() {}
+    public GameOfLifeHandler() {
+        this(null);
+    }
+
+    public GameOfLifeHandler(GameOfLifeResultCache resultCache) {
+        this.resultCache = resultCache;
     }
 
     /**
      * Game entrypoint.
      */
-    private String handleWorkload(int[][] inputMap, int iterations) {
-        int height = inputMap.length;
-        int width = (height > 0) ? inputMap[0].length : 0;
-        byte[] map = convertMapToByteArray(inputMap, height, width);
+    private String handleWorkload(GameOfLifeMap map, int iterations, String engine, int parallelism) {
+        GameOfLifeEngine gol = playWorkload(map, iterations, engine, parallelism);
+        return GameOfLifeResponseWriter.toString(map, gol.getData());
+    }
 
-        GameOfLife gol = new GameOfLife(width, height, map);
+    /**
+     * Plays the game and returns the engine holding the final state.
+     */
+    private GameOfLifeEngine playWorkload(GameOfLifeMap map, int iterations, String engine, int parallelism) {
+        GameOfLifeEngine gol = createEngine(engine, map.getWidth(), map.getHeight(), map.cells(), iterations, parallelism);
         gol.play(iterations);
-        byte[] resultData = gol.getData();
-
-        int[][] resultMap = new int[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                resultMap[i][j] = Byte.toUnsignedInt(resultData[i * width + j]);
-            }
-        }
-        GameOfLifeResponse response = new GameOfLifeResponse(inputMap, resultMap);
-
-        try {
-            return MAPPER.writeValueAsString(response);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return "{ \"error\":\"" + e.getMessage() + "\"}";
-        }
+        return gol;
     }
 
     /**
@@ -105,35 +102,113 @@ public class GameOfLifeHandler implements HttpHandler, RequestHandler<Map<String
         int iterations = Integer.parseInt(parameters.get("iterations"));
         boolean storeMetrics = Boolean.parseBoolean(parameters.get("storeMetrics"));
         String mapFilename = parameters.get("mapFilename");
+        String engine = parameters.get("engine");
+        int parallelism = parseParallelism(parameters.get("parallelism"));
+
+        String cacheKey = null;
+        if (resultCache != null) {
+            cacheKey = resultCacheKey(parameters);
+            GameOfLifeResult cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                addCycleHeaders(he, cached.getCyclePeriod(), cached.getCycleDetectedAt());
+                sendResponse(he, 200, cached.getResponse());
+                ICount.clearThreadStatistics();
+                return;
+            }
+        }
 
-        int[][] map;
-        try (InputStream mapFileInputStream = getClass().getClassLoader().getResourceAsStream(mapFilename)) {
-            GameOfLifeInput request = MAPPER.readValue(mapFileInputStream, GameOfLifeInput.class);
-            map = request.map;
-        } catch (NullPointerException | JsonProcessingException e) {
+        GameOfLifeMap map;
+        try {
+            map = GameOfLifeMapRepository.getMap(mapFilename);
+        } catch (IOException e) {
             e.printStackTrace();
             String errorResponse = "{ \"error\":\"" + e.getMessage() + "\"}";
-            he.sendResponseHeaders(400, errorResponse.length());
-            OutputStream os = he.getResponseBody();
-            os.write(errorResponse.getBytes());
-            os.close();
+            sendResponse(he, 400, errorResponse.getBytes(StandardCharsets.UTF_8));
             return;
         }
 
-        String response = handleWorkload(map, iterations);
+        // Continues from the cached game of this map with the most iterations below the requested ones.
+        GameOfLifeResult seed = (resultCache != null) ? resultCache.findSeed(mapFilename, iterations) : null;
+        byte[] start = map.cells();
+        int remaining = iterations;
+        if (seed != null) {
+            start = seed.getCells();
+            remaining = iterations - seed.getIterations();
+            if (seed.getCyclePeriod() > 0) {
+                // The seed is already inside its cycle.
+                remaining %= seed.getCyclePeriod();
+            }
+        }
 
-        he.sendResponseHeaders(200, response.length());
-        OutputStream os = he.getResponseBody();
-        os.write(response.getBytes());
-        os.close();
+        GameOfLifeEngine gol = createEngine(engine, map.getWidth(), map.getHeight(), start, remaining, parallelism);
+        String requestId = he.getRequestHeaders().getFirst(RequestRegistry.REQUEST_ID_HEADER);
+        gol.setCancellation(RequestRegistry.start(requestId));
+        try {
+            gol.play(remaining);
+        } catch (CancellationException e) {
+            RequestRegistry.sendCancelled(he, requestId);
+            ICount.clearThreadStatistics();
+            return;
+        } finally {
+            RequestRegistry.finish(requestId);
+        }
+        byte[] result = gol.getData();
+
+        int cyclePeriod = gol.getCyclePeriod();
+        int cycleDetectedAt = gol.getCycleDetectedAt();
+        if (seed != null) {
+            cyclePeriod = (seed.getCyclePeriod() > 0) ? seed.getCyclePeriod() : cyclePeriod;
+            cycleDetectedAt = (seed.getCyclePeriod() > 0) ? seed.getCycleDetectedAt() : seed.getIterations() + cycleDetectedAt;
+        }
+        addCycleHeaders(he, cyclePeriod, cycleDetectedAt);
+
+        if (resultCache != null) {
+            byte[] response = GameOfLifeResponseWriter.toBytes(map, result);
+            resultCache.put(cacheKey, new GameOfLifeResult(mapFilename, iterations, result, response, cyclePeriod, cycleDetectedAt));
+            sendResponse(he, 200, response);
+        } else {
+            // The response is streamed from the cells, its exact length is known upfront.
+            he.sendResponseHeaders(200, GameOfLifeResponseWriter.contentLength(map, result));
+            OutputStream os = he.getResponseBody();
+            GameOfLifeResponseWriter.write(os, map, result);
+            os.close();
+        }
 
         Statistics requestStatistics = ICount.getThreadStatistics();
-        if(storeMetrics) {
+        // A game continued from a cached one only measured part of the work.
+        if(storeMetrics && seed == null) {
             StorageUtil.storeMetrics(parameters, requestStatistics, "gameoflife");
         }
         ICount.clearThreadStatistics();
     }
 
+    /**
+     * Lets the load balancer learn that further iterations on this map are cheap.
+     */
+    private static void addCycleHeaders(HttpExchange he, int cyclePeriod, int cycleDetectedAt) {
+        if (cyclePeriod > 0) {
+            he.getResponseHeaders().add(CYCLE_PERIOD_HEADER, Integer.toString(cyclePeriod));
+            he.getResponseHeaders().add(CYCLE_DETECTED_AT_HEADER, Integer.toString(cycleDetectedAt));
+        }
+    }
+
+    private static void sendResponse(HttpExchange he, int status, byte[] response) throws IOException {
+        he.sendResponseHeaders(status, response.length);
+        OutputStream os = he.getResponseBody();
+        os.write(response);
+        os.close();
+    }
+
+    /**
+     * Canonical key of a request in the result cache. The engine and parallelism do not change the result.
+     */
+    private static String resultCacheKey(Map<String, String> parameters) {
+        Map<String, String> keyParameters = new HashMap<>(parameters);
+        keyParameters.remove("engine");
+        keyParameters.remove("parallelism");
+        return StorageUtil.serializeParameters(keyParameters);
+    }
+
     /**
      * Entrypoint for AWS Lambda.
      */
@@ -141,17 +216,18 @@ public class GameOfLifeHandler implements HttpHandler, RequestHandler<Map<String
     public String handleRequest(Map<String,String> event, Context context) {
         int iterations = Integer.parseInt(event.get("iterations"));
         String mapFilename = event.get("mapFilename");
+        String engine = event.get("engine");
+        int parallelism = parseParallelism(event.get("parallelism"));
 
-        int[][] map;
-        try (InputStream mapFileInputStream = getClass().getClassLoader().getResourceAsStream(mapFilename)) {
-            GameOfLifeInput request = MAPPER.readValue(mapFileInputStream, GameOfLifeInput.class);
-            map = request.map;
-        } catch (IOException | NullPointerException e) {
+        GameOfLifeMap map;
+        try {
+            map = GameOfLifeMapRepository.getMap(mapFilename);
+        } catch (IOException e) {
             e.printStackTrace();
             return "{ \"error\":\"" + e.getMessage() + "\"}";
         }
 
-        return handleWorkload(map, iterations);
+        return handleWorkload(map, iterations, engine, parallelism);
     }
 
     /**
@@ -159,17 +235,16 @@ public class GameOfLifeHandler implements HttpHandler, RequestHandler<Map<String
      */
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.gameoflife.GameOfLifeHandler <map_json_filename> <iterations>");
+            System.out.println("Usage: java pt.ulisboa.tecnico.cnv.gameoflife.GameOfLifeHandler <map_json_filename> <iterations> [classic|bitpacked|hashlife]");
             return;
         }
         String mapFilename = args[0];
 
 
-        int[][] intMap;
-        try (InputStream mapFileInputStream = GameOfLifeHandler.class.getClassLoader().getResourceAsStream(mapFilename)) {
-            GameOfLifeInput request = MAPPER.readValue(mapFileInputStream, GameOfLifeInput.class);
-            intMap = request.map;
-        } catch (IOException | NullPointerException e) {
+        GameOfLifeMap map;
+        try {
+            map = GameOfLifeMapRepository.getMap(mapFilename);
+        } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
             return;  // redundant but needed to avoid null-check warning.
@@ -183,36 +258,58 @@ public class GameOfLifeHandler implements HttpHandler, RequestHandler<Map<String
             System.exit(1);
         }
 
-        int rows = intMap.length;
-        int cols = (rows > 0) ? intMap[0].length : 0;
-        byte[] map = convertMapToByteArray(intMap, rows, cols);
-
-        GameOfLife gol = new GameOfLife(cols, rows, map);
+        GameOfLifeEngine gol = createEngine(args.length > 2 ? args[2] : null, map.getWidth(), map.getHeight(),
+                map.cells(), iterations, BitPackedGameOfLife.WORKER_PARALLELISM);
 
         System.out.println("Initial State:");
         System.out.println(gol.gridToString());
 
-        // You can also use 'gol.playCLI()' for interactive simulation.
+        // You can also use 'new GameOfLife(cols, rows, map).playCLI()' for interactive simulation.
         gol.play(iterations);
 
         System.out.println("Final State:");
         System.out.println(gol.gridToString());
+
+        if (gol.getCyclePeriod() > 0) {
+            System.out.println("Cycle of period " + gol.getCyclePeriod() + " detected at generation " + gol.getCycleDetectedAt() + ".");
+        }
     }
 
     /**
-     * Util method to convert a 2D int array to a byte array.
+     * Picks the engine for a request. All engines produce the same output, so when no engine is requested
+     * Hashlife is used if there are many iterations compared with the map size, and the bit-packed engine
+     * otherwise. Engines that cannot represent the map fall back to the classic one. The parallelism only
+     * applies to the bit-packed engine. The given cells are shared with other requests, so the classic
+     * engine, the only one that modifies them, gets a copy.
      */
-    private static byte[] convertMapToByteArray(int[][] map, int rows, int cols) {
-        byte[] byteArray = new byte[rows * cols];
-
-        int index = 0;
-        for (int[] row : map) {
-            for (int cell : row) {
-                byteArray[index++] = (byte) cell;
-            }
+    private static GameOfLifeEngine createEngine(String engine, int width, int height, byte[] map, int iterations,
+                                                 int parallelism) {
+        if (CLASSIC_ENGINE.equalsIgnoreCase(engine)) {
+            return new GameOfLife(width, height, map.clone());
+        }
+        boolean autoSelect = !BITPACKED_ENGINE.equalsIgnoreCase(engine) && !HASHLIFE_ENGINE.equalsIgnoreCase(engine);
+        if ((HASHLIFE_ENGINE.equalsIgnoreCase(engine) || autoSelect && HashLifeGameOfLife.prefers(width, height, iterations))
+                && HashLifeGameOfLife.supports(width, height, map)) {
+            return new HashLifeGameOfLife(width, height, map);
         }
+        if (BitPackedGameOfLife.supports(width, height, map)) {
+            return new BitPackedGameOfLife(width, height, map, parallelism);
+        }
+        return new GameOfLife(width, height, map.clone());
+    }
 
-        return byteArray;
+    /**
+     * Parallelism requested for the bit-packed engine, defaults to the worker-wide setting.
+     */
+    private static int parseParallelism(String parallelism) {
+        if (parallelism == null || parallelism.isEmpty()) {
+            return BitPackedGameOfLife.WORKER_PARALLELISM;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(parallelism));
+        } catch (NumberFormatException e) {
+            return BitPackedGameOfLife.WORKER_PARALLELISM;
+        }
     }
 
     /**
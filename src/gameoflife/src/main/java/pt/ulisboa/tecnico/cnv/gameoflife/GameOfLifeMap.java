@@ -0,0 +1,53 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+/**
+ * Immutable map parsed once from a map resource and shared by every request that plays it.
+ *
+ * The cells are kept in the 1d (row-major) format used by the engines. Engines that only read
+ * the cells use them directly, engines that modify them get their own copy.
+ */
+public final class GameOfLifeMap {
+
+    private final int width;
+    private final int height;
+    private final byte[] cells;
+    /**
+     * The map as it appears in the inputMap field of the response, serialized once.
+     */
+    private final byte[] inputJson;
+
+    GameOfLifeMap(int[][] map, byte[] inputJson) {
+        this.height = map.length;
+        this.width = (height > 0) ? map[0].length : 0;
+        this.cells = new byte[height * width];
+        int index = 0;
+        for (int[] row : map) {
+            for (int cell : row) {
+                cells[index++] = (byte) cell;
+            }
+        }
+        this.inputJson = inputJson;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Shared cells of the map, must not be modified.
+     */
+    byte[] cells() {
+        return cells;
+    }
+
+    /**
+     * Shared JSON bytes of the inputMap field, must not be modified.
+     */
+    byte[] inputJson() {
+        return inputJson;
+    }
+}
@@ -0,0 +1,65 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses each map resource on first use and keeps it for the lifetime of the worker (or of the warm
+ * Lambda container), so requests do not read and parse the JSON again.
+ */
+public class GameOfLifeMapRepository {
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    private final static Map<String, GameOfLifeMap> MAPS = new ConcurrentHashMap<>();
+
+    /**
+     * Input map model.
+     */
+    private static class GameOfLifeInput {
+        public int[][] map;
+
+        public GameOfLifeInput(int[][] map) {
+            this.map = map;
+        }
+
+        public GameOfLifeInput() {}
+    }
+
+    /**
+     * Returns the parsed map, loading it if this is the first request for it. Concurrent first requests
+     * may both parse the map, only one of the results is kept.
+     */
+    public static GameOfLifeMap getMap(String mapFilename) throws IOException {
+        if (mapFilename == null) {
+            throw new FileNotFoundException("Missing mapFilename");
+        }
+        GameOfLifeMap map = MAPS.get(mapFilename);
+        if (map == null) {
+            map = loadMap(mapFilename);
+            GameOfLifeMap previous = MAPS.putIfAbsent(mapFilename, map);
+            if (previous != null) {
+                map = previous;
+            }
+        }
+        return map;
+    }
+
+    private static GameOfLifeMap loadMap(String mapFilename) throws IOException {
+        try (InputStream mapFileInputStream = GameOfLifeMapRepository.class.getClassLoader().getResourceAsStream(mapFilename)) {
+            if (mapFileInputStream == null) {
+                throw new FileNotFoundException("Map not found: " + mapFilename);
+            }
+            GameOfLifeInput input = MAPPER.readValue(mapFileInputStream, GameOfLifeInput.class);
+            if (input.map == null) {
+                throw new IOException("Map " + mapFilename + " has no map field");
+            }
+            return new GameOfLifeMap(input.map, MAPPER.writeValueAsBytes(input.map));
+        }
+    }
+}
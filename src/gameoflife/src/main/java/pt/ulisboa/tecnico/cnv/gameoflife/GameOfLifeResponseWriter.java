@@ -0,0 +1,108 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the response of a game straight from the cell bytes, without building the int[][] grids
+ * or the whole JSON string. The output is the same compact JSON Jackson produced for the
+ * {inputMap, outputMap} response model, and its exact length is known before writing.
+ */
+final class GameOfLifeResponseWriter {
+
+    private final static byte[] INPUT_PREFIX = "{\"inputMap\":".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] OUTPUT_PREFIX = ",\"outputMap\":".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] SUFFIX = "}".getBytes(StandardCharsets.US_ASCII);
+
+    private final static int BUFFER_SIZE = 8192;
+
+    private GameOfLifeResponseWriter() {}
+
+    /**
+     * Number of bytes {@link #write} produces for the given map and final cells.
+     */
+    static long contentLength(GameOfLifeMap map, byte[] output) {
+        return INPUT_PREFIX.length + map.inputJson().length + OUTPUT_PREFIX.length
+                + gridLength(map.getWidth(), map.getHeight(), output) + SUFFIX.length;
+    }
+
+    static void write(OutputStream os, GameOfLifeMap map, byte[] output) throws IOException {
+        os.write(INPUT_PREFIX);
+        os.write(map.inputJson());
+        os.write(OUTPUT_PREFIX);
+        writeGrid(os, map.getWidth(), map.getHeight(), output);
+        os.write(SUFFIX);
+    }
+
+    /**
+     * Response as a string, for the Lambda entrypoint which has to return one.
+     */
+    static String toString(GameOfLifeMap map, byte[] output) {
+        return new String(toBytes(map, output), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Response as bytes, for responses that are kept after being sent.
+     */
+    static byte[] toBytes(GameOfLifeMap map, byte[] output) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream((int) contentLength(map, output));
+        try {
+            write(os, map, output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // ByteArrayOutputStream does not throw.
+        }
+        return os.toByteArray();
+    }
+
+    private static long gridLength(int width, int height, byte[] cells) {
+        // Outer brackets, commas between rows, and brackets and commas of each row.
+        long length = 2 + Math.max(0, height - 1) + (long) height * (2 + Math.max(0, width - 1));
+        for (int i = 0; i < width * height; i++) {
+            length += digits(Byte.toUnsignedInt(cells[i]));
+        }
+        return length;
+    }
+
+    private static void writeGrid(OutputStream os, int width, int height, byte[] cells) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int pos = 0;
+        buffer[pos++] = '[';
+        for (int row = 0; row < height; row++) {
+            if (row > 0) {
+                buffer[pos++] = ',';
+            }
+            buffer[pos++] = '[';
+            for (int col = 0; col < width; col++) {
+                // Room for a comma, three digits and the closing brackets of the row and grid.
+                if (pos > BUFFER_SIZE - 8) {
+                    os.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                if (col > 0) {
+                    buffer[pos++] = ',';
+                }
+                int cell = Byte.toUnsignedInt(cells[row * width + col]);
+                if (cell >= 100) {
+                    buffer[pos++] = (byte) ('0' + cell / 100);
+                }
+                if (cell >= 10) {
+                    buffer[pos++] = (byte) ('0' + cell / 10 % 10);
+                }
+                buffer[pos++] = (byte) ('0' + cell % 10);
+            }
+            buffer[pos++] = ']';
+            if (pos > BUFFER_SIZE - 8) {
+                os.write(buffer, 0, pos);
+                pos = 0;
+            }
+        }
+        buffer[pos++] = ']';
+        os.write(buffer, 0, pos);
+    }
+
+    private static int digits(int value) {
+        return value >= 100 ? 3 : value >= 10 ? 2 : 1;
+    }
+}
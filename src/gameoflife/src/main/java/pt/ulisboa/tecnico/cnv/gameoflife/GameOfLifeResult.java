@@ -0,0 +1,62 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+/**
+ * Finished game kept by a {@link GameOfLifeResultCache}: the encoded response, plus the final cells so
+ * that a request for more iterations on the same map can continue from here.
+ */
+public final class GameOfLifeResult {
+
+    private final String mapFilename;
+    private final int iterations;
+    private final byte[] cells;
+    private final byte[] response;
+    private final int cyclePeriod;
+    private final int cycleDetectedAt;
+
+    GameOfLifeResult(String mapFilename, int iterations, byte[] cells, byte[] response, int cyclePeriod,
+                     int cycleDetectedAt) {
+        this.mapFilename = mapFilename;
+        this.iterations = iterations;
+        this.cells = cells;
+        this.response = response;
+        this.cyclePeriod = cyclePeriod;
+        this.cycleDetectedAt = cycleDetectedAt;
+    }
+
+    public String getMapFilename() {
+        return mapFilename;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Final cells, shared by every request served from this result and must not be modified.
+     */
+    byte[] getCells() {
+        return cells;
+    }
+
+    /**
+     * Encoded response body, shared by every request served from this result and must not be modified.
+     */
+    byte[] getResponse() {
+        return response;
+    }
+
+    public int getCyclePeriod() {
+        return cyclePeriod;
+    }
+
+    public int getCycleDetectedAt() {
+        return cycleDetectedAt;
+    }
+
+    /**
+     * Approximate heap footprint in bytes, used to bound the cache.
+     */
+    public long getWeight() {
+        return cells.length + response.length + 64;
+    }
+}
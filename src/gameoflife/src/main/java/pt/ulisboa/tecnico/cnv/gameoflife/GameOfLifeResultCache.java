@@ -0,0 +1,21 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+/**
+ * Cache of finished games that the server hosting {@link GameOfLifeHandler} can plug in.
+ * A game is a pure function of its map and iterations, so implementations never need to invalidate.
+ * Implementations must be thread-safe.
+ */
+public interface GameOfLifeResultCache {
+
+    /**
+     * Result cached under the canonical parameters of a request, or null.
+     */
+    GameOfLifeResult get(String key);
+
+    /**
+     * Cached result of the given map with the most iterations below the given count, or null.
+     */
+    GameOfLifeResult findSeed(String mapFilename, int iterations);
+
+    void put(String key, GameOfLifeResult result);
+}
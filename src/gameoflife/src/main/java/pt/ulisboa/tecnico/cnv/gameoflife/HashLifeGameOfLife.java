@@ -0,0 +1,446 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hashlife engine for requests with many iterations on a comparatively small map.
+ * Read more details here: https://en.wikipedia.org/wiki/Hashlife
+ *
+ * The wrap semantics of {@link GameOfLife} (a 1d ring of width * height cells) are kept by laying the
+ * ring over the infinite plane: plane cell (x, y) holds ring cell (y * width + x) mod size. Plain Life on
+ * that periodic plane evolves exactly like the ring, so a canonical quadtree built over it can advance
+ * 2^j generations at once and the new ring is read back from the centre of the result.
+ *
+ * On top of the quadtree, the whole grid is advanced by doubling: 2^j generations are two 2^(j-1) jumps,
+ * and every jump is memoized by grid contents, so grids that settle into still lifes or oscillators
+ * answer huge iteration counts with a logarithmic number of jumps.
+ */
+public class HashLifeGameOfLife implements GameOfLifeEngine {
+
+    /**
+     * Iterations per grid cell above which the handler prefers this engine.
+     */
+    private final static int ITERATIONS_PER_CELL_THRESHOLD = 16;
+
+    /**
+     * Bound of the canonical node table. The table and all memoized results are dropped when exceeded.
+     */
+    private final static int MAX_NODES = 1 << 19;
+
+    /**
+     * Bound of the memoized grid jumps, in packed words.
+     */
+    private final static long MAX_JUMP_WORDS = 1L << 22;
+
+    /**
+     * Largest jump exponent needed for an int number of iterations.
+     */
+    private final static int MAX_JUMP_EXPONENT = 31;
+
+    /**
+     * Canonical quadtree node. Level 0 nodes are cells, a level k node covers 2^k x 2^k cells.
+     */
+    private static final class Node {
+        final Node nw, ne, sw, se;
+        final int level;
+        final boolean alive;
+        final int hash;
+        /**
+         * Memoized centres advanced 2^j generations, indexed by j.
+         */
+        Node[] results;
+        /**
+         * Next node in the same bucket of the canonical table.
+         */
+        Node chain;
+
+        Node(boolean alive) {
+            this.nw = this.ne = this.sw = this.se = null;
+            this.level = 0;
+            this.alive = alive;
+            this.hash = alive ? 1 : 0;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se, int hash) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.level = nw.level + 1;
+            this.alive = nw.alive || ne.alive || sw.alive || se.alive;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Grid contents used as key of the jump memo.
+     */
+    private static final class PackedGrid {
+        final long[] bits;
+        final int hash;
+
+        PackedGrid(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PackedGrid)) return false;
+            return Arrays.equals(bits, ((PackedGrid) o).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final static Node DEAD_CELL = new Node(false);
+    private final static Node ALIVE_CELL = new Node(true);
+
+    private final int width;
+    private final int height;
+    private final int size;
+    /**
+     * Level of the quadtree built over the grid. Its centre (level - 1) covers the whole grid.
+     */
+    private final int rootLevel;
+
+    private Node[] table = new Node[1 << 16];
+    private int nodeCount = 0;
+    private Node[] emptyNodes;
+
+    @SuppressWarnings("unchecked")
+    private final Map<PackedGrid, long[]>[] jumps = new Map[MAX_JUMP_EXPONENT];
+    private long jumpWords = 0;
+
+    /**
+     * Current grid, one bit per cell in row-major order.
+     */
+    private long[] grid;
+
+    /**
+     * Checked by every node advanced that is not memoized yet, see {@link #setCancellation(AtomicBoolean)}.
+     */
+    private AtomicBoolean cancelled;
+
+    public HashLifeGameOfLife(int width, int height, byte[] data) {
+        if (!supports(width, height, data)) {
+            throw new IllegalArgumentException("Hashlife engine requires a grid of at least 2x2 cells with 0/1 values");
+        }
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+        int side = Math.max(width, height);
+        this.rootLevel = Math.max(3, 33 - Integer.numberOfLeadingZeros(side - 1));
+        this.emptyNodes = new Node[rootLevel + 1];
+        for (int j = 0; j < MAX_JUMP_EXPONENT; j++) {
+            jumps[j] = new HashMap<>();
+        }
+
+        this.grid = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            if (data[i] == GameOfLife.ALIVE) {
+                grid[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Only dead or alive cells are supported. Grids thinner than 2 cells are also left to the other engines,
+     * since there the ring makes a cell its own neighbour, which the periodic plane cannot express.
+     */
+    public static boolean supports(int width, int height, byte[] data) {
+        return width >= 2 && height >= 2 && BitPackedGameOfLife.supports(width, height, data);
+    }
+
+    /**
+     * Whether a request is expected to be cheaper on this engine than stepping every generation.
+     */
+    public static boolean prefers(int width, int height, int iterations) {
+        return iterations >= (long) ITERATIONS_PER_CELL_THRESHOLD * width * height;
+    }
+
+    @Override
+    public void play(int iterations) {
+        for (int j = MAX_JUMP_EXPONENT - 1; j >= 0; j--) {
+            if ((iterations & (1 << j)) != 0) {
+                grid = jump(grid, j);
+            }
+        }
+    }
+
+    @Override
+    public void setCancellation(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    private void checkCancelled() {
+        if (cancelled != null && cancelled.get()) {
+            throw new CancellationException("Game cancelled");
+        }
+    }
+
+    /**
+     * Advances the grid 2^j generations.
+     */
+    private long[] jump(long[] from, int j) {
+        PackedGrid key = new PackedGrid(from);
+        long[] memoized = jumps[j].get(key);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        long[] to;
+        if (j <= rootLevel - 2) {
+            if (nodeCount > MAX_NODES) {
+                clearNodes();
+            }
+            int offset = 1 << (rootLevel - 2);
+            Node root = build(from, rootLevel, -offset, -offset);
+            to = new long[from.length];
+            extract(advance(root, j), 0, 0, to);
+        } else {
+            to = jump(jump(from, j - 1), j - 1);
+        }
+
+        if (jumpWords + from.length > MAX_JUMP_WORDS) {
+            for (Map<PackedGrid, long[]> memo : jumps) {
+                memo.clear();
+            }
+            jumpWords = 0;
+        }
+        jumps[j].put(key, to);
+        jumpWords += from.length;
+        return to;
+    }
+
+    /**
+     * Returns the centre of the node advanced 2^j generations, with 0 <= j <= level - 2.
+     */
+    private Node advance(Node node, int j) {
+        if (!node.alive) {
+            return empty(node.level - 1);
+        }
+        if (node.results != null && node.results[j] != null) {
+            return node.results[j];
+        }
+        checkCancelled();
+
+        Node result;
+        if (node.level == 2) {
+            result = advanceLeaf(node);
+        } else {
+            Node n00 = node.nw;
+            Node n01 = horizontal(node.nw, node.ne);
+            Node n02 = node.ne;
+            Node n10 = vertical(node.nw, node.sw);
+            Node n11 = centre(node);
+            Node n12 = vertical(node.ne, node.se);
+            Node n20 = node.sw;
+            Node n21 = horizontal(node.sw, node.se);
+            Node n22 = node.se;
+
+            if (j == node.level - 2) {
+                // Two half-jumps: the nine overlapping subnodes, then the four recombined ones.
+                Node r00 = advance(n00, j - 1), r01 = advance(n01, j - 1), r02 = advance(n02, j - 1);
+                Node r10 = advance(n10, j - 1), r11 = advance(n11, j - 1), r12 = advance(n12, j - 1);
+                Node r20 = advance(n20, j - 1), r21 = advance(n21, j - 1), r22 = advance(n22, j - 1);
+                result = join(
+                        advance(join(r00, r01, r10, r11), j - 1),
+                        advance(join(r01, r02, r11, r12), j - 1),
+                        advance(join(r10, r11, r20, r21), j - 1),
+                        advance(join(r11, r12, r21, r22), j - 1));
+            } else {
+                // Shorter jump: advance the nine subnodes, then only take the centres of the recombined ones.
+                Node r00 = advance(n00, j), r01 = advance(n01, j), r02 = advance(n02, j);
+                Node r10 = advance(n10, j), r11 = advance(n11, j), r12 = advance(n12, j);
+                Node r20 = advance(n20, j), r21 = advance(n21, j), r22 = advance(n22, j);
+                result = join(
+                        centre(join(r00, r01, r10, r11)),
+                        centre(join(r01, r02, r11, r12)),
+                        centre(join(r10, r11, r20, r21)),
+                        centre(join(r11, r12, r21, r22)));
+            }
+        }
+
+        if (node.results == null) {
+            node.results = new Node[node.level - 1];
+        }
+        node.results[j] = result;
+        return result;
+    }
+
+    /**
+     * Advances the centre 2x2 cells of a 4x4 node one generation.
+     */
+    private Node advanceLeaf(Node node) {
+        int cells = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if (cellAt(node, x, y)) {
+                    cells |= 1 << (y * 4 + x);
+                }
+            }
+        }
+        return join(
+                nextCell(cells, 1, 1) ? ALIVE_CELL : DEAD_CELL,
+                nextCell(cells, 2, 1) ? ALIVE_CELL : DEAD_CELL,
+                nextCell(cells, 1, 2) ? ALIVE_CELL : DEAD_CELL,
+                nextCell(cells, 2, 2) ? ALIVE_CELL : DEAD_CELL);
+    }
+
+    private static boolean cellAt(Node node, int x, int y) {
+        Node quadrant = y < 2 ? (x < 2 ? node.nw : node.ne) : (x < 2 ? node.sw : node.se);
+        Node cell = (y & 1) == 0 ? ((x & 1) == 0 ? quadrant.nw : quadrant.ne) : ((x & 1) == 0 ? quadrant.sw : quadrant.se);
+        return cell.alive;
+    }
+
+    private static boolean nextCell(int cells, int x, int y) {
+        int aliveNeighbors = 0;
+        for (int row = y - 1; row <= y + 1; row++) {
+            for (int col = x - 1; col <= x + 1; col++) {
+                if ((row != y || col != x) && (cells & (1 << (row * 4 + col))) != 0) {
+                    aliveNeighbors++;
+                }
+            }
+        }
+        boolean alive = (cells & (1 << (y * 4 + x))) != 0;
+        return aliveNeighbors == 3 || (alive && aliveNeighbors == 2);
+    }
+
+    private Node horizontal(Node w, Node e) {
+        return join(w.ne, e.nw, w.se, e.sw);
+    }
+
+    private Node vertical(Node n, Node s) {
+        return join(n.sw, n.se, s.nw, s.ne);
+    }
+
+    private Node centre(Node node) {
+        return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+    }
+
+    /**
+     * Returns the canonical node with the given quadrants.
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        int hash = ((nw.hash * 0x9E3779B1 + ne.hash) * 0x9E3779B1 + sw.hash) * 0x9E3779B1 + se.hash;
+        hash ^= hash >>> 15;
+        int bucket = hash & (table.length - 1);
+        for (Node node = table[bucket]; node != null; node = node.chain) {
+            if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) {
+                return node;
+            }
+        }
+        Node node = new Node(nw, ne, sw, se, hash);
+        node.chain = table[bucket];
+        table[bucket] = node;
+        if (++nodeCount > table.length) {
+            resizeTable();
+        }
+        return node;
+    }
+
+    private void resizeTable() {
+        Node[] resized = new Node[table.length << 1];
+        for (Node head : table) {
+            Node node = head;
+            while (node != null) {
+                Node next = node.chain;
+                int bucket = node.hash & (resized.length - 1);
+                node.chain = resized[bucket];
+                resized[bucket] = node;
+                node = next;
+            }
+        }
+        table = resized;
+    }
+
+    private void clearNodes() {
+        table = new Node[1 << 16];
+        nodeCount = 0;
+        emptyNodes = new Node[rootLevel + 1];
+    }
+
+    private Node empty(int level) {
+        if (level == 0) {
+            return DEAD_CELL;
+        }
+        Node node = emptyNodes[level];
+        if (node == null) {
+            Node child = empty(level - 1);
+            node = join(child, child, child, child);
+            emptyNodes[level] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Builds the node covering the plane square of the given level with top-left corner (x0, y0).
+     */
+    private Node build(long[] bits, int level, int x0, int y0) {
+        if (level == 0) {
+            int cell = Math.floorMod(y0 * width + x0, size);
+            return (bits[cell >>> 6] & (1L << cell)) != 0 ? ALIVE_CELL : DEAD_CELL;
+        }
+        int half = 1 << (level - 1);
+        return join(
+                build(bits, level - 1, x0, y0),
+                build(bits, level - 1, x0 + half, y0),
+                build(bits, level - 1, x0, y0 + half),
+                build(bits, level - 1, x0 + half, y0 + half));
+    }
+
+    /**
+     * Copies the alive cells of the node placed at (x0, y0) that fall inside the grid into bits.
+     */
+    private void extract(Node node, int x0, int y0, long[] bits) {
+        if (!node.alive || x0 >= width || y0 >= height) {
+            return;
+        }
+        if (node.level == 0) {
+            int cell = y0 * width + x0;
+            bits[cell >>> 6] |= 1L << cell;
+            return;
+        }
+        int half = 1 << (node.level - 1);
+        extract(node.nw, x0, y0, bits);
+        extract(node.ne, x0 + half, y0, bits);
+        extract(node.sw, x0, y0 + half, bits);
+        extract(node.se, x0 + half, y0 + half, bits);
+    }
+
+    @Override
+    public byte[] getData() {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ((grid[i >>> 6] >>> i) & 1L);
+        }
+        return data;
+    }
+
+    /**
+     * Repeated grids are absorbed by the jump memo instead, so no period is reported.
+     */
+    @Override
+    public int getCyclePeriod() {
+        return 0;
+    }
+
+    @Override
+    public int getCycleDetectedAt() {
+        return 0;
+    }
+
+    @Override
+    public String gridToString() {
+        return GameOfLife.gridToString(getData(), width, height);
+    }
+}
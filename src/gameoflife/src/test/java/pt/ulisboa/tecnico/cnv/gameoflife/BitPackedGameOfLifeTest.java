@@ -0,0 +1,114 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitPackedGameOfLifeTest {
+
+    /**
+     * Shapes around the word size, including rings thin enough for a cell to be its own neighbour.
+     */
+    private final static int[][] SHAPES = {
+            {1, 1}, {1, 7}, {7, 1}, {2, 2}, {3, 3}, {8, 8}, {13, 17}, {64, 1}, {64, 3}, {63, 5}, {65, 65}, {100, 37}
+    };
+
+    @Test
+    void matchesReferenceStepByStep() {
+        for (int[] shape : SHAPES) {
+            int width = shape[0];
+            int height = shape[1];
+            byte[] data = ReferenceLife.randomBoard(width, height, 0.4, width * 31L + height);
+            BitPackedGameOfLife engine = new BitPackedGameOfLife(width, height, data.clone(), 1);
+            byte[] expected = data;
+            for (int generation = 1; generation <= 20; generation++) {
+                engine.play(1);
+                expected = ReferenceLife.step(width, height, expected);
+                assertArrayEquals(expected, engine.getData(), width + "x" + height + " generation " + generation);
+            }
+        }
+    }
+
+    @Test
+    void matchesReferenceOverManyGenerations() {
+        for (int[] shape : SHAPES) {
+            int width = shape[0];
+            int height = shape[1];
+            byte[] data = ReferenceLife.randomBoard(width, height, 0.5, width * 17L + height);
+            BitPackedGameOfLife engine = new BitPackedGameOfLife(width, height, data.clone(), 1);
+            engine.play(150);
+            assertArrayEquals(ReferenceLife.play(width, height, data, 150), engine.getData(), width + "x" + height);
+        }
+    }
+
+    @Test
+    void matchesClassicEngine() {
+        byte[] data = ReferenceLife.randomBoard(50, 40, 0.3, 7);
+        GameOfLife classic = new GameOfLife(50, 40, data.clone());
+        BitPackedGameOfLife packed = new BitPackedGameOfLife(50, 40, data.clone(), 1);
+        classic.play(200);
+        packed.play(200);
+        assertArrayEquals(classic.getData(), packed.getData());
+    }
+
+    /**
+     * Boards of 4096+ words are split in up to 4 bands, see the surefire configuration.
+     */
+    @Test
+    void parallelBandsMatchReference() {
+        assertTrue(BitPackedGameOfLife.WORKER_PARALLELISM >= 4);
+        for (int[] shape : new int[][]{{512, 512}, {601, 500}}) {
+            int width = shape[0];
+            int height = shape[1];
+            byte[] data = ReferenceLife.randomBoard(width, height, 0.4, width);
+            BitPackedGameOfLife parallel = new BitPackedGameOfLife(width, height, data.clone(), 4);
+            BitPackedGameOfLife sequential = new BitPackedGameOfLife(width, height, data.clone(), 1);
+            parallel.play(12);
+            sequential.play(12);
+            assertArrayEquals(ReferenceLife.play(width, height, data, 12), parallel.getData(), width + "x" + height);
+            assertArrayEquals(sequential.getData(), parallel.getData(), width + "x" + height);
+        }
+    }
+
+    /**
+     * Few words change on these boards, so after the first generation they are stepped sparsely.
+     */
+    @Test
+    void sparseStepsMatchReference() {
+        byte[] noise = ReferenceLife.randomBoard(256, 256, 0.03, 19);
+        BitPackedGameOfLife engine = new BitPackedGameOfLife(256, 256, noise.clone(), 1);
+        engine.play(150);
+        assertArrayEquals(ReferenceLife.play(256, 256, noise, 150), engine.getData());
+
+        // glider crossing word boundaries and the seam of the ring
+        byte[] glider = new byte[64 * 64];
+        glider[1] = glider[64 + 2] = glider[128] = glider[128 + 1] = glider[128 + 2] = GameOfLife.ALIVE;
+        BitPackedGameOfLife gliding = new BitPackedGameOfLife(64, 64, glider.clone(), 1);
+        byte[] expected = glider;
+        for (int generation = 1; generation <= 300; generation++) {
+            gliding.play(1);
+            expected = ReferenceLife.step(64, 64, expected);
+            assertArrayEquals(expected, gliding.getData(), "generation " + generation);
+        }
+    }
+
+    @Test
+    void supportsOnlyDeadOrAliveCells() {
+        assertTrue(BitPackedGameOfLife.supports(2, 1, new byte[]{0, 1}));
+        assertFalse(BitPackedGameOfLife.supports(2, 1, new byte[]{0, 2}));
+        assertFalse(BitPackedGameOfLife.supports(0, 1, new byte[0]));
+    }
+
+    @Test
+    void stopsWhenCancelled() {
+        BitPackedGameOfLife engine = new BitPackedGameOfLife(16, 16, ReferenceLife.randomBoard(16, 16, 0.4, 3), 1);
+        engine.setCancellation(new AtomicBoolean(true));
+        assertThrows(CancellationException.class, () -> engine.play(10));
+    }
+}
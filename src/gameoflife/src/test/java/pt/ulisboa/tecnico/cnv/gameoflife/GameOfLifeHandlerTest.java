@@ -0,0 +1,99 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class GameOfLifeHandlerTest {
+
+    /**
+     * Unbounded cache, enough to check what the handler stores and reuses.
+     */
+    private static class MapResultCache implements GameOfLifeResultCache {
+
+        private final Map<String, GameOfLifeResult> results = new HashMap<>();
+        private final Map<String, TreeMap<Integer, GameOfLifeResult>> resultsByMap = new HashMap<>();
+
+        @Override
+        public synchronized GameOfLifeResult get(String key) {
+            return results.get(key);
+        }
+
+        @Override
+        public synchronized GameOfLifeResult findSeed(String mapFilename, int iterations) {
+            TreeMap<Integer, GameOfLifeResult> byIterations = resultsByMap.get(mapFilename);
+            Map.Entry<Integer, GameOfLifeResult> seed = (byIterations != null) ? byIterations.lowerEntry(iterations) : null;
+            return (seed != null) ? seed.getValue() : null;
+        }
+
+        @Override
+        public synchronized void put(String key, GameOfLifeResult result) {
+            results.put(key, result);
+            resultsByMap.computeIfAbsent(result.getMapFilename(), m -> new TreeMap<>()).put(result.getIterations(), result);
+        }
+    }
+
+    private HttpServer server;
+    private MapResultCache cache;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        cache = new MapResultCache();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/cached", new GameOfLifeHandler(cache));
+        server.createContext("/uncached", new GameOfLifeHandler());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private String get(String context, int iterations, String engine) throws IOException {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/" + context
+                + "?mapFilename=glider-10-10.json&iterations=" + iterations + "&engine=" + engine + "&storeMetrics=false");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream body = connection.getInputStream()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void servesRepeatedRequestsFromTheCache() throws IOException {
+        String first = get("cached", 25, "bitpacked");
+        GameOfLifeResult cached = cache.findSeed("glider-10-10.json", 26);
+        assertNotNull(cached);
+        // the engine does not change the result, so it is not part of the key
+        assertEquals(first, get("cached", 25, "classic"));
+        assertSame(cached, cache.findSeed("glider-10-10.json", 26));
+        assertEquals(get("uncached", 25, "classic"), first);
+    }
+
+    @Test
+    void continuesLongerGamesFromCachedOnes() throws IOException {
+        // seeds before and after the glider falls into its cycle
+        int[][] games = {{3, 17}, {17, 40}, {200, 1003}, {1003, 1_000_001}};
+        for (int[] game : games) {
+            get("cached", game[0], "bitpacked");
+            assertEquals(get("uncached", game[1], "classic"), get("cached", game[1], "bitpacked"),
+                    game[0] + " then " + game[1]);
+        }
+    }
+}
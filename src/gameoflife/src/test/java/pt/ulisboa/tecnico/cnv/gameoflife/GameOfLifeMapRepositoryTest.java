@@ -0,0 +1,47 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GameOfLifeMapRepositoryTest {
+
+    @Test
+    void parsesMapsOnce() throws IOException {
+        GameOfLifeMap map = GameOfLifeMapRepository.getMap("glider-10-10.json");
+        assertSame(map, GameOfLifeMapRepository.getMap("glider-10-10.json"));
+    }
+
+    @Test
+    void keepsTheCellsAndInputOfTheResource() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        int[][] grid;
+        try (InputStream resource = getClass().getClassLoader().getResourceAsStream("glider-10-10.json")) {
+            grid = mapper.readTree(resource).get("map").traverse(mapper).readValueAs(int[][].class);
+        }
+
+        GameOfLifeMap map = GameOfLifeMapRepository.getMap("glider-10-10.json");
+        assertEquals(10, map.getWidth());
+        assertEquals(10, map.getHeight());
+        for (int row = 0; row < 10; row++) {
+            for (int col = 0; col < 10; col++) {
+                assertEquals(grid[row][col], map.cells()[row * 10 + col]);
+            }
+        }
+        assertArrayEquals(mapper.writeValueAsBytes(grid), map.inputJson());
+    }
+
+    @Test
+    void rejectsMissingMaps() {
+        assertThrows(FileNotFoundException.class, () -> GameOfLifeMapRepository.getMap("missing.json"));
+        assertThrows(FileNotFoundException.class, () -> GameOfLifeMapRepository.getMap(null));
+    }
+}
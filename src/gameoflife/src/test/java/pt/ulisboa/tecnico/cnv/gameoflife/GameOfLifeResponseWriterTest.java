@@ -0,0 +1,76 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameOfLifeResponseWriterTest {
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The {inputMap, outputMap} response as Jackson serialized it before the writer.
+     */
+    private static byte[] jacksonResponse(int[][] input, int[][] output) throws IOException {
+        Map<String, int[][]> response = new LinkedHashMap<>();
+        response.put("inputMap", input);
+        response.put("outputMap", output);
+        return MAPPER.writeValueAsBytes(response);
+    }
+
+    private static int[][] toGrid(byte[] cells, int width, int height) {
+        int[][] grid = new int[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                grid[row][col] = Byte.toUnsignedInt(cells[row * width + col]);
+            }
+        }
+        return grid;
+    }
+
+    private static void assertSameAsJackson(int[][] input, byte[] output) throws IOException {
+        GameOfLifeMap map = new GameOfLifeMap(input, MAPPER.writeValueAsBytes(input));
+        int width = map.getWidth();
+        int height = map.getHeight();
+        byte[] expected = jacksonResponse(input, toGrid(output, width, height));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        GameOfLifeResponseWriter.write(os, map, output);
+        assertArrayEquals(expected, os.toByteArray(), width + "x" + height);
+        assertEquals(expected.length, GameOfLifeResponseWriter.contentLength(map, output));
+        assertArrayEquals(expected, GameOfLifeResponseWriter.toBytes(map, output));
+    }
+
+    @Test
+    void matchesJacksonForPlayedBoards() throws IOException {
+        // the largest board spans several buffers
+        for (int[] shape : new int[][]{{1, 1}, {3, 2}, {10, 10}, {97, 131}}) {
+            int width = shape[0];
+            int height = shape[1];
+            byte[] cells = ReferenceLife.randomBoard(width, height, 0.4, width);
+            int[][] input = toGrid(cells, width, height);
+            assertSameAsJackson(input, ReferenceLife.play(width, height, cells, 3));
+        }
+    }
+
+    @Test
+    void matchesJacksonForMultiDigitCells() throws IOException {
+        Random random = new Random(1);
+        byte[] cells = new byte[70 * 90];
+        random.nextBytes(cells);
+        assertSameAsJackson(toGrid(cells, 70, 90), cells);
+    }
+
+    @Test
+    void matchesJacksonForEmptyMap() throws IOException {
+        assertSameAsJackson(new int[0][], new byte[0]);
+    }
+}
@@ -0,0 +1,64 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameOfLifeTest {
+
+    /**
+     * Blinker in the middle of a 5x5 board, it oscillates with period 2.
+     */
+    private static byte[] blinker() {
+        byte[] data = new byte[25];
+        data[11] = data[12] = data[13] = GameOfLife.ALIVE;
+        return data;
+    }
+
+    @Test
+    void detectsOscillatorAndSkipsTheRest() {
+        byte[] data = blinker();
+        GameOfLife game = new GameOfLife(5, 5, data.clone());
+        game.play(1_000_001);
+        assertEquals(2, game.getCyclePeriod());
+        assertEquals(3, game.getCycleDetectedAt());
+        assertArrayEquals(ReferenceLife.step(5, 5, data), game.getData());
+    }
+
+    @Test
+    void detectsStillBoard() {
+        GameOfLife game = new GameOfLife(4, 4, new byte[16]);
+        game.play(100);
+        assertEquals(1, game.getCyclePeriod());
+        assertEquals(1, game.getCycleDetectedAt());
+        assertArrayEquals(new byte[16], game.getData());
+    }
+
+    @Test
+    void reportsNoCycleBeforeItRepeats() {
+        GameOfLife game = new GameOfLife(5, 5, blinker());
+        game.play(2);
+        assertEquals(0, game.getCyclePeriod());
+        assertEquals(0, game.getCycleDetectedAt());
+    }
+
+    @Test
+    void skippingMatchesReference() {
+        for (long seed = 0; seed < 10; seed++) {
+            byte[] data = ReferenceLife.randomBoard(12, 10, 0.3, seed);
+            for (int iterations : new int[]{1, 5, 100, 1001}) {
+                byte[] expected = ReferenceLife.play(12, 10, data, iterations);
+                GameOfLife classic = new GameOfLife(12, 10, data.clone());
+                classic.play(iterations);
+                assertArrayEquals(expected, classic.getData(), "seed " + seed + " after " + iterations);
+
+                BitPackedGameOfLife packed = new BitPackedGameOfLife(12, 10, data.clone(), 1);
+                packed.play(iterations);
+                assertArrayEquals(expected, packed.getData(), "seed " + seed + " after " + iterations);
+                assertEquals(classic.getCyclePeriod(), packed.getCyclePeriod());
+                assertEquals(classic.getCycleDetectedAt(), packed.getCycleDetectedAt());
+            }
+        }
+    }
+}
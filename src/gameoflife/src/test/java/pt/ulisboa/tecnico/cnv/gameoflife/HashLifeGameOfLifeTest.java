@@ -0,0 +1,67 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashLifeGameOfLifeTest {
+
+    private final static int[][] SHAPES = {
+            {2, 2}, {2, 9}, {9, 2}, {3, 3}, {8, 8}, {13, 17}, {64, 3}, {65, 65}, {100, 37}
+    };
+
+    @Test
+    void matchesReference() {
+        for (int[] shape : SHAPES) {
+            int width = shape[0];
+            int height = shape[1];
+            byte[] data = ReferenceLife.randomBoard(width, height, 0.4, width * 13L + height);
+            for (int iterations : new int[]{0, 1, 2, 3, 7, 64, 100, 257}) {
+                HashLifeGameOfLife engine = new HashLifeGameOfLife(width, height, data.clone());
+                engine.play(iterations);
+                assertArrayEquals(ReferenceLife.play(width, height, data, iterations), engine.getData(),
+                        width + "x" + height + " after " + iterations);
+            }
+        }
+    }
+
+    @Test
+    void repeatedPlaysAddUp() {
+        byte[] data = ReferenceLife.randomBoard(20, 20, 0.35, 11);
+        HashLifeGameOfLife engine = new HashLifeGameOfLife(20, 20, data.clone());
+        engine.play(37);
+        engine.play(90);
+        assertArrayEquals(ReferenceLife.play(20, 20, data, 127), engine.getData());
+    }
+
+    @Test
+    void matchesClassicEngineOverLongRuns() {
+        byte[] data = ReferenceLife.randomBoard(16, 16, 0.3, 5);
+        GameOfLife classic = new GameOfLife(16, 16, data.clone());
+        HashLifeGameOfLife hashLife = new HashLifeGameOfLife(16, 16, data.clone());
+        classic.play(1_000_003);
+        hashLife.play(1_000_003);
+        assertArrayEquals(classic.getData(), hashLife.getData());
+    }
+
+    @Test
+    void supportsOnlyGridsOfAtLeastTwoByTwo() {
+        assertTrue(HashLifeGameOfLife.supports(2, 2, new byte[4]));
+        assertFalse(HashLifeGameOfLife.supports(1, 4, new byte[4]));
+        assertFalse(HashLifeGameOfLife.supports(4, 1, new byte[4]));
+        assertFalse(HashLifeGameOfLife.supports(2, 2, new byte[]{0, 0, 2, 0}));
+    }
+
+    @Test
+    void stopsWhenCancelled() {
+        HashLifeGameOfLife engine = new HashLifeGameOfLife(16, 16, ReferenceLife.randomBoard(16, 16, 0.4, 3));
+        engine.setCancellation(new AtomicBoolean(true));
+        assertThrows(CancellationException.class, () -> engine.play(1000));
+    }
+}
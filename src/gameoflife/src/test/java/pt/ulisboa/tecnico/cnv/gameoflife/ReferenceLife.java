@@ -0,0 +1,55 @@
+package pt.ulisboa.tecnico.cnv.gameoflife;
+
+import java.util.Random;
+
+/**
+ * Straightforward stepping of the original Game of Life, against which the engines are checked.
+ * Neighbours wrap around the row-major ring of cells, as in {@link GameOfLife}.
+ */
+final class ReferenceLife {
+
+    private ReferenceLife() {
+    }
+
+    static byte[] play(int width, int height, byte[] data, int iterations) {
+        byte[] current = data.clone();
+        for (int i = 0; i < iterations; i++) {
+            current = step(width, height, current);
+        }
+        return current;
+    }
+
+    static byte[] step(int width, int height, byte[] data) {
+        int size = width * height;
+        byte[] next = new byte[size];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int position = y * width + x;
+                int alive = 0;
+                for (int row = y - 1; row <= y + 1; row++) {
+                    for (int col = x - 1; col <= x + 1; col++) {
+                        int neighbor = Math.floorMod(row * width + col, size);
+                        if (neighbor != position && data[neighbor] == GameOfLife.ALIVE) {
+                            alive++;
+                        }
+                    }
+                }
+                boolean lives = data[position] == GameOfLife.ALIVE ? alive == 2 || alive == 3 : alive == 3;
+                next[position] = lives ? GameOfLife.ALIVE : GameOfLife.DEAD;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Board with each cell alive with the given probability.
+     */
+    static byte[] randomBoard(int width, int height, double density, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextDouble() < density ? GameOfLife.ALIVE : GameOfLife.DEAD;
+        }
+        return data;
+    }
+}
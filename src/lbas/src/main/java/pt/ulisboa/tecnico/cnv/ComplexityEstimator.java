@@ -8,11 +8,15 @@ import pt.ulisboa.tecnico.cnv.util.GameOfLifeEstimator;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 
 public class ComplexityEstimator {
     private static final int MAX_ENTRIES = 5000;
     private static final double FIFTEEN_PUZZLE_SCALE_WEIGHT = 3.54;
     private static final double GAME_OF_LIFE_SCALE_WEIGHT = 1.84;
+    // Headers set by the gameoflife workers when the board falls into a cycle
+    private static final String CYCLE_PERIOD_HEADER = "X-Cycle-Period";
+    private static final String CYCLE_DETECTED_AT_HEADER = "X-Cycle-Detected-At";
 
     public record ComplexityEstimate(long value, boolean storeMetrics) {}
 
@@ -46,6 +50,22 @@ public class ComplexityEstimator {
         return new ComplexityEstimate(normalizeComplexity(game, complexity), true);
     }
 
+    public void learnFromResponse(String game, Map<String, String> params, WorkerResponse response) {
+        if (!game.equalsIgnoreCase("gameoflife")) {
+            return;
+        }
+        Optional<String> period = response.header(CYCLE_PERIOD_HEADER);
+        Optional<String> detectedAt = response.header(CYCLE_DETECTED_AT_HEADER);
+        if (period.isPresent() && detectedAt.isPresent()) {
+            try {
+                GameOfLifeEstimator.recordCycle(params.get("mapFilename"),
+                        Long.parseLong(detectedAt.get()), Long.parseLong(period.get()));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid cycle headers from worker: " + e.getMessage());
+            }
+        }
+    }
+
     private Long normalizeComplexity(String game, Long complexity) {
         if(game.equals("FifteenPuzzle"))
             return Math.round(complexity * FIFTEEN_PUZZLE_SCALE_WEIGHT);
@@ -11,14 +11,28 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpTimeoutException;
 import java.time.Duration;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
 
 public class HttpForwarder {
 
+    // Runs the client's callbacks, which only pass the responses on, they are written elsewhere (see RequestAssigner)
+    private static final int CLIENT_THREADS = 8;
+
     private static final HttpClient client = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(30))
+            .executor(Executors.newFixedThreadPool(CLIENT_THREADS))
             .build();
 
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+    // Time left to the worker to solve the request, short of the timeout so the response can still arrive
+    private static final String TIME_BUDGET_HEADER = "X-Time-Budget-Millis";
+    private static final Duration TIME_BUDGET_MARGIN = Duration.ofSeconds(5);
+    // Lets the worker stop the request once it is no longer waited for, see cancelRequest
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+
     public static void forwardResponse(WorkerResponse response, HttpExchange exchange) {
         try {
             int statusCode = response.statusCode();
@@ -47,18 +61,23 @@ public class HttpForwarder {
 
     public static CompletableFuture<WorkerResponse> forwardRequest(Worker worker, HttpExchange exchange, boolean storeMetrics) {
         String targetUrl = buildTargetUrl(worker, exchange, storeMetrics);
+        String requestId = UUID.randomUUID().toString();
 
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(targetUrl))
-                .timeout(Duration.ofMinutes(2))
+                .timeout(REQUEST_TIMEOUT)
+                .header(TIME_BUDGET_HEADER, Long.toString(REQUEST_TIMEOUT.minus(TIME_BUDGET_MARGIN).toMillis()))
+                .header(REQUEST_ID_HEADER, requestId)
                 .GET()
                 .build();
 
         return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(httpResponse -> new WorkerResponse(httpResponse.statusCode(), httpResponse.body()))
+                .thenApply(httpResponse -> new WorkerResponse(httpResponse.statusCode(), httpResponse.body(), httpResponse.headers().map()))
                 .exceptionally(e -> {
-                    if (e instanceof HttpTimeoutException) {
+                    Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                    if (cause instanceof HttpTimeoutException) {
                         System.out.println("Request timed out to " + targetUrl + ": " + e.getMessage());
+                        cancelRequest(worker, requestId);
                     } else {
                         System.out.println("Failed to forward request to " + targetUrl + ": " + e.getMessage());
                     }
@@ -67,6 +86,23 @@ public class HttpForwarder {
     }
 
 
+    /**
+     * Asks the worker to stop a request whose response will not be waited for, so its capacity is freed.
+     */
+    private static void cancelRequest(Worker worker, String requestId) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://" + worker.getHost() + ":" + worker.getPort() + "/cancel?requestId=" + requestId))
+                .timeout(Duration.ofSeconds(10))
+                .GET()
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(response -> System.out.println("Cancelled request " + requestId + " on " + worker.getHost() + ": " + response.statusCode()))
+                .exceptionally(e -> {
+                    System.out.println("Failed to cancel request " + requestId + ": " + e.getMessage());
+                    return null;
+                });
+    }
+
     private static String buildTargetUrl(Worker worker, HttpExchange exchange, boolean storeMetrics) {
         StringBuilder url = new StringBuilder();
         url.append("http://").append(worker.getHost()).append(":").append(worker.getPort());
@@ -1,8 +1,9 @@
 package pt.ulisboa.tecnico.cnv;
 
 import com.amazonaws.auth.EnvironmentVariableCredentialsProvider;
-import com.amazonaws.services.lambda.AWSLambda;
-import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.lambda.AWSLambdaAsync;
+import com.amazonaws.services.lambda.AWSLambdaAsyncClientBuilder;
 import com.amazonaws.services.lambda.model.InvokeRequest;
 import com.amazonaws.services.lambda.model.InvokeResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,11 +17,12 @@ import java.util.concurrent.CompletableFuture;
 
 public class LambdaInvoker {
 
-    private final AWSLambda awsLambda;
+    // Invokes on the client's own bounded pool and calls back, so no caller thread waits for the function
+    private final AWSLambdaAsync awsLambda;
     private final ObjectMapper mapper = new ObjectMapper();
 
     public LambdaInvoker() {
-        awsLambda = AWSLambdaClientBuilder.standard()
+        awsLambda = AWSLambdaAsyncClientBuilder.standard()
                 .withCredentials(new EnvironmentVariableCredentialsProvider())
                 .build();
     }
@@ -29,29 +31,38 @@ public class LambdaInvoker {
         String game = uri.getPath().split("/")[1];
         Map<String, String> params = queryToMap(uri.getRawQuery());
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                byte[] jsonPayload = mapper.writeValueAsBytes(params); // only params
+        CompletableFuture<WorkerResponse> future = new CompletableFuture<>();
+        try {
+            byte[] jsonPayload = mapper.writeValueAsBytes(params); // only params
 
-                InvokeRequest request = new InvokeRequest()
-                        .withFunctionName(game)
-                        .withPayload(ByteBuffer.wrap(jsonPayload));
+            InvokeRequest request = new InvokeRequest()
+                    .withFunctionName(game)
+                    .withPayload(ByteBuffer.wrap(jsonPayload));
 
-                InvokeResult result = awsLambda.invoke(request);
+            awsLambda.invokeAsync(request, new AsyncHandler<>() {
+                @Override
+                public void onError(Exception e) {
+                    System.err.println("Error invoking Lambda: " + e.getMessage());
+                    future.complete(null);
+                }
 
-                int statusCode = result.getStatusCode();
-                String payload = new String(result.getPayload().array(), StandardCharsets.UTF_8);
+                @Override
+                public void onSuccess(InvokeRequest request, InvokeResult result) {
+                    int statusCode = result.getStatusCode();
+                    String payload = new String(result.getPayload().array(), StandardCharsets.UTF_8);
 
-                if (statusCode != 200) {
-                    System.out.println("Error invoking Lambda: " + statusCode);
-                }
+                    if (statusCode != 200) {
+                        System.out.println("Error invoking Lambda: " + statusCode);
+                    }
 
-                return new WorkerResponse(statusCode, payload);
-            } catch (Exception e) {
-                System.err.println("Error invoking Lambda: " + e.getMessage());
-                return null;
-            }
-        });
+                    future.complete(new WorkerResponse(statusCode, payload));
+                }
+            });
+        } catch (Exception e) {
+            System.err.println("Error invoking Lambda: " + e.getMessage());
+            future.complete(null);
+        }
+        return future;
     }
 
     private Map<String, String> queryToMap(String query) {
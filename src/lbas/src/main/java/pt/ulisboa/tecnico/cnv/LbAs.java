@@ -8,9 +8,13 @@ import java.util.concurrent.Executors;
 
 public class LbAs {
 
+    // Handler threads only estimate and dispatch requests, responses are written from their completion
+    // callbacks, so a fixed number of them keeps up with bursts without a thread per request in flight.
+    private static final int HANDLER_THREADS = 32;
+
     public static void main(String[] args) throws Exception {
         HttpServer server = HttpServer.create(new InetSocketAddress(80), 0);
-        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.setExecutor(Executors.newFixedThreadPool(HANDLER_THREADS));
         LoadBalancer loadBalancer = new LoadBalancer();
         String amiId;
         if (args.length > 0) {
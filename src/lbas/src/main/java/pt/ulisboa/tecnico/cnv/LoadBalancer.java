@@ -23,6 +23,7 @@ public class LoadBalancer {
     private final ConcurrentMap<String, Worker> workers = new ConcurrentHashMap<>();
     final Queue<QueuedRequest> globalOverflowQueue = new ConcurrentLinkedQueue<>();
     private final ComplexityEstimator complexityEstimator;
+    private final ResponseCache responseCache;
     private final LambdaInvoker lambdaInvoker;
     private final AtomicLong requestCounter = new AtomicLong(0);
     private final ScheduledExecutorService queueProcessor;
@@ -34,6 +35,7 @@ public class LoadBalancer {
 
     public LoadBalancer() throws InterruptedException {
         this.complexityEstimator = new ComplexityEstimator();
+        this.responseCache = new ResponseCache();
         this.lambdaInvoker = new LambdaInvoker();
         this.queueProcessor = Executors.newScheduledThreadPool(1);
         this.metrics = new LoadBalancerMetrics();
@@ -10,6 +10,8 @@ public class LoadBalancerMetrics {
     private final AtomicLong forwardedToLambda = new AtomicLong(0);
     private final AtomicLong queuedRequests = new AtomicLong(0);
     private final AtomicLong rejectedRequests = new AtomicLong(0);
+    private final AtomicLong coalescedRequests = new AtomicLong(0);
+    private final AtomicLong cacheHits = new AtomicLong(0);
     private final LongAdder totalResponseTime = new LongAdder();
 
     public void incrementTotalRequests() { totalRequests.incrementAndGet(); }
@@ -17,6 +19,8 @@ public class LoadBalancerMetrics {
     public void incrementForwardedToLambda() { forwardedToLambda.incrementAndGet(); }
     public void incrementQueuedRequests() { queuedRequests.incrementAndGet(); }
     public void incrementRejectedRequests() { rejectedRequests.incrementAndGet(); }
+    public void incrementCoalescedRequests() { coalescedRequests.incrementAndGet(); }
+    public void incrementCacheHits() { cacheHits.incrementAndGet(); }
     public void addResponseTime(long responseTimeMs) { totalResponseTime.add(responseTimeMs); }
 
     public long getTotalRequests() { return totalRequests.get(); }
@@ -24,6 +28,8 @@ public class LoadBalancerMetrics {
     public long getForwardedToLambda() { return forwardedToLambda.get(); }
     public long getQueuedRequests() { return queuedRequests.get(); }
     public long getRejectedRequests() { return rejectedRequests.get(); }
+    public long getCoalescedRequests() { return coalescedRequests.get(); }
+    public long getCacheHits() { return cacheHits.get(); }
     public long getTotalResponseTime() { return totalResponseTime.sum(); }
 
     public double getAverageResponseTime() {
@@ -38,6 +44,8 @@ public class LoadBalancerMetrics {
         System.out.println("Forwarded to Lambda: " + getForwardedToLambda());
         System.out.println("Queued Requests: " + getQueuedRequests());
         System.out.println("Rejected Requests: " + getRejectedRequests());
+        System.out.println("Coalesced Requests: " + getCoalescedRequests());
+        System.out.println("Cache Hits: " + getCacheHits());
         System.out.println("Average Response Time: " + String.format("%.2f ms", getAverageResponseTime()));
         System.out.println("============================");
     }
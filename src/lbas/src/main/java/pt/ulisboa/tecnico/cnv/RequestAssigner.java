@@ -2,16 +2,22 @@ package pt.ulisboa.tecnico.cnv;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import pt.ulisboa.tecnico.cnv.storage.StorageUtil;
 import pt.ulisboa.tecnico.cnv.strategies.BalancedStrategy;
 import pt.ulisboa.tecnico.cnv.strategies.PackingStrategy;
 import pt.ulisboa.tecnico.cnv.strategies.SpreadingStrategy;
 import pt.ulisboa.tecnico.cnv.strategies.VmSelectionStrategy;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class RequestAssigner implements HttpHandler {
 
@@ -22,6 +28,21 @@ public class RequestAssigner implements HttpHandler {
 
     private static final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
 
+    // Runs retries once their delay is over, instead of a thread sleeping through it. Retries reuse the
+    // request's estimate, so this only reads the workers' load and reassigns the request.
+    private static final Executor retryExecutor = CompletableFuture.delayedExecutor(
+            RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS, Executors.newSingleThreadExecutor());
+
+    // Writes the responses to the clients. Writes block while a slow client reads, so they run here rather
+    // than on the threads that complete the worker and Lambda futures (see HttpForwarder and LambdaInvoker).
+    private static final int RESPONSE_THREADS = 16;
+    private static final ExecutorService responseExecutor = Executors.newFixedThreadPool(RESPONSE_THREADS);
+
+    // Requests being processed by path and parameters (see coalescingKey). The games are deterministic, so
+    // identical requests arriving meanwhile wait for the first one's response instead of being forwarded,
+    // and later ones are answered from the response cache.
+    private final Map<String, CompletableFuture<WorkerResponse>> inFlight = new ConcurrentHashMap<>();
+
 
     public RequestAssigner(LoadBalancer loadBalancer) {
         this.loadBalancer = loadBalancer;
@@ -47,20 +68,83 @@ public class RequestAssigner implements HttpHandler {
         }
 
         long startTime = System.currentTimeMillis();
-        try {
-            RequestContext context = buildRequestContext(exchange);
-            WorkerResponse response = processRequest(exchange, context);
-            handleResponse(response, exchange);
-        } catch (Exception e) {
-            System.err.println("Error handling request: " + e.getMessage());
-            loadBalancer.getMetrics().incrementRejectedRequests();
-            sendErrorResponse(exchange);
-        } finally {
+        String key = coalescingKey(exchange.getRequestURI());
+        WorkerResponse cached = loadBalancer.getResponseCache().get(key);
+        if (cached != null) {
+            loadBalancer.getMetrics().incrementCacheHits();
+            handleResponse(cached, exchange);
+            recordMetrics(startTime);
+            return;
+        }
+
+        CompletableFuture<WorkerResponse> flight = new CompletableFuture<>();
+        CompletableFuture<WorkerResponse> leader = inFlight.putIfAbsent(key, flight);
+        CompletableFuture<WorkerResponse> response;
+        if (leader != null) {
+            loadBalancer.getMetrics().incrementCoalescedRequests();
+            response = leader;
+        } else {
+            response = dispatch(exchange, key, flight);
+        }
+
+        // The response is written when it arrives, no thread waits for it.
+        response.whenCompleteAsync((workerResponse, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null)
+                        ? throwable.getCause() : throwable;
+                System.err.println("Error handling request: " + cause.getMessage());
+                loadBalancer.getMetrics().incrementRejectedRequests();
+                sendErrorResponse(exchange);
+            } else {
+                handleResponse(workerResponse, exchange);
+            }
             recordMetrics(startTime);
             if(loadBalancer.getGlobalQueueLength() > 0) {
                 cleanupExecutor.submit(loadBalancer::clearGlobal);
             }
+        }, responseExecutor);
+    }
+
+    /**
+     * Estimates and processes the request, then learns from and caches its response and answers the requests
+     * waiting for it.
+     */
+    private CompletableFuture<WorkerResponse> dispatch(HttpExchange exchange, String key,
+                                                      CompletableFuture<WorkerResponse> flight) {
+        CompletableFuture<WorkerResponse> response;
+        try {
+            RequestContext context = buildRequestContext(exchange);
+            loadBalancer.printWorkerSummary();
+            response = processRequest(exchange, context, 1).thenApply(workerResponse -> {
+                if (workerResponse != null) {
+                    loadBalancer.getComplexityEstimator().learnFromResponse(
+                            extractGame(exchange), extractParameters(exchange), workerResponse);
+                    loadBalancer.getResponseCache().put(key, workerResponse, context.complexity());
+                }
+                return workerResponse;
+            });
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
         }
+        // the waiting requests fail with this one, they would have been retried the same way
+        return response.whenComplete((workerResponse, throwable) ->
+                completeFlight(key, flight, (throwable == null) ? workerResponse : null));
+    }
+
+    /**
+     * Answers the requests waiting for this one. Only the first completion counts.
+     */
+    private void completeFlight(String key, CompletableFuture<WorkerResponse> flight, WorkerResponse response) {
+        inFlight.remove(key, flight);
+        flight.complete(response);
+    }
+
+    /**
+     * Path and parameters, canonicalised as the complexity estimator keys them (see
+     * StorageUtil.serializeParameters), so requests are coalesced exactly when they are estimated alike.
+     */
+    static String coalescingKey(URI uri) {
+        return uri.getPath() + "?" + StorageUtil.serializeParameters(extractParameters(uri));
     }
 
     private RequestContext buildRequestContext(HttpExchange exchange) {
@@ -76,23 +160,31 @@ public class RequestAssigner implements HttpHandler {
         );
     }
 
-    private WorkerResponse processRequest(HttpExchange exchange, RequestContext context)
-            throws Exception {
-        loadBalancer.printWorkerSummary();
-        for(int i = 0; i < MAX_RETRIES; i++) {
-            VmSelectionStrategy strategy = selectStrategy(context);
-            CompletableFuture<WorkerResponse> responseFuture = loadBalancer.tryAssignToBestCandidate(exchange, context, strategy);
-            if (responseFuture != null) {
-                WorkerResponse response = responseFuture.get();
-                if (response != null && response.isSuccess()) {
-                    return response;
-                }
-            }
-            Thread.sleep(RETRY_DELAY_MILLIS);
-            System.out.println("Retrying request...");
-            context = buildRequestContext(exchange);
+    /**
+     * Assigns the request and, if its response is missing or failed, assigns it again after a delay, up to
+     * MAX_RETRIES attempts. Each attempt starts when the previous one completes, with the same estimate and the
+     * workers' load at that time. Completes with null if all fail.
+     */
+    private CompletableFuture<WorkerResponse> processRequest(HttpExchange exchange, RequestContext context,
+                                                             int attempt) {
+        VmSelectionStrategy strategy = selectStrategy(context);
+        CompletableFuture<WorkerResponse> responseFuture = loadBalancer.tryAssignToBestCandidate(exchange, context, strategy);
+        if (responseFuture == null) {
+            responseFuture = CompletableFuture.completedFuture(null);
         }
-        return null;
+        return responseFuture.thenCompose(response -> {
+            if (response != null && (response.isSuccess() || response.isDeadlineExceeded())) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (attempt >= MAX_RETRIES) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                System.out.println("Retrying request...");
+                return new RequestContext(context.complexity(), context.storeMetrics(),
+                        loadBalancer.calculateAverageLoad());
+            }, retryExecutor).thenCompose(next -> processRequest(exchange, next, attempt + 1));
+        });
     }
 
     private VmSelectionStrategy selectStrategy(RequestContext context) {
@@ -150,8 +242,12 @@ public class RequestAssigner implements HttpHandler {
     }
 
     private Map<String, String> extractParameters(HttpExchange exchange) {
+        return extractParameters(exchange.getRequestURI());
+    }
+
+    private static Map<String, String> extractParameters(URI uri) {
         Map<String, String> params = new HashMap<>();
-        String query = exchange.getRequestURI().getQuery();
+        String query = uri.getQuery();
         if (query != null) {
             String[] pairs = query.split("&");
             for (String pair : pairs) {
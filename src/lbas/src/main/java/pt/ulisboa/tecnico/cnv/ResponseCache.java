@@ -0,0 +1,148 @@
+package pt.ulisboa.tecnico.cnv;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Successful worker responses, by request, so repeated requests are answered without reaching a worker.
+ *
+ * Eviction follows GreedyDual-Size: each response is worth the complexity estimated for its request per byte,
+ * plus an inflation value that rises to the worth of each evicted response. Expensive responses therefore stay
+ * longer than cheap ones of the same size, while responses that stop being requested eventually fall below the
+ * inflation and are evicted. A hit brings the response's worth back up to the current inflation. The total
+ * size of the cached keys, bodies and headers, UTF-8 encoded, is bounded, configurable with the
+ * lbas.cache.maxBytes system property.
+ */
+public class ResponseCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long weight = 0;
+    private double inflation = 0;
+    private long sequence = 0;
+
+    private static final class Entry {
+        final String key;
+        final WorkerResponse response;
+        final long complexity;
+        final long size;
+        double priority;
+        // breaks ties between equal priorities, older entries are evicted first
+        long order;
+
+        Entry(String key, WorkerResponse response, long complexity, long size) {
+            this.key = key;
+            this.response = response;
+            this.complexity = complexity;
+            this.size = size;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byPriority = new TreeSet<>(
+            Comparator.comparingDouble((Entry entry) -> entry.priority).thenComparingLong(entry -> entry.order));
+
+    public ResponseCache() {
+        this(Long.getLong("lbas.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized WorkerResponse get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        byPriority.remove(entry);
+        prioritize(entry);
+        byPriority.add(entry);
+        return entry.response;
+    }
+
+    /**
+     * Caches a successful response, worth the given estimated complexity. Other responses are ignored.
+     */
+    public synchronized void put(String key, WorkerResponse response, long complexity) {
+        if (!response.isSuccess()) {
+            return;
+        }
+        long size = size(key, response);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            byPriority.remove(previous);
+            weight -= previous.size;
+        }
+
+        Entry entry = new Entry(key, response, complexity, size);
+        prioritize(entry);
+        entries.put(key, entry);
+        byPriority.add(entry);
+        weight += size;
+
+        while (weight > maxBytes) {
+            Entry evicted = byPriority.pollFirst();
+            entries.remove(evicted.key);
+            weight -= evicted.size;
+            inflation = evicted.priority;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Bytes charged for a cached response: its key, body and headers, UTF-8 encoded.
+     */
+    static long size(String key, WorkerResponse response) {
+        long size = utf8Length(key) + utf8Length(response.body());
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            if (header.getKey() != null) {
+                size += utf8Length(header.getKey());
+            }
+            for (String value : header.getValue()) {
+                size += utf8Length(value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Length of the string UTF-8 encoded, counted without encoding it.
+     */
+    static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void prioritize(Entry entry) {
+        entry.priority = inflation + (double) Math.max(1, entry.complexity) / entry.size;
+        entry.order = sequence++;
+    }
+}
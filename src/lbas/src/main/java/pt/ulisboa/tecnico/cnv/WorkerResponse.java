@@ -1,7 +1,23 @@
 package pt.ulisboa.tecnico.cnv;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public record WorkerResponse(int statusCode, String body, Map<String, List<String>> headers) {
+    public WorkerResponse(int statusCode, String body) {
+        this(statusCode, body, Map.of());
+    }
 
-public record WorkerResponse(int statusCode, String body) {
     boolean isSuccess() { return statusCode == 200;}
-}
 
+    // The worker gave up at the time budget it was sent, retrying would only time out again
+    boolean isDeadlineExceeded() { return statusCode == 504;}
+
+    Optional<String> header(String name) {
+        return headers.entrySet().stream()
+                .filter(entry -> entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty())
+                .map(entry -> entry.getValue().get(0))
+                .findFirst();
+    }
+}
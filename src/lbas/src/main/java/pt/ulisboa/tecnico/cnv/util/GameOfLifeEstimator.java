@@ -1,6 +1,7 @@
 package pt.ulisboa.tecnico.cnv.util;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GameOfLifeEstimator {
     // Model parameters from JSON
@@ -11,12 +12,32 @@ public class GameOfLifeEstimator {
 
     // No scaling needed (scaler_params is null)
 
+    // Cycles reported by workers per map: past the detection point, workers only simulate the remainder of the period
+    private record Cycle(long detectedAt, long period) {}
+
+    private static final Map<String, Cycle> CYCLES = new ConcurrentHashMap<>();
+
     public static Long estimateComplexity(Map<String, String> params) {
-        double iterations = Double.parseDouble(params.get("iterations"));
+        double iterations = effectiveIterations(params.get("mapFilename"), Double.parseDouble(params.get("iterations")));
 
         // Simple linear model (no scaling, no log transformation)
         double complexity = INTERCEPT + COEFFICIENTS[0] * iterations;
 
         return Math.round(complexity);
     }
+
+    public static void recordCycle(String mapFilename, long detectedAt, long period) {
+        if (mapFilename != null && detectedAt > 0 && period > 0) {
+            CYCLES.put(mapFilename, new Cycle(detectedAt, period));
+        }
+    }
+
+    private static double effectiveIterations(String mapFilename, double iterations) {
+        Cycle cycle = mapFilename != null ? CYCLES.get(mapFilename) : null;
+        if (cycle == null || iterations <= cycle.detectedAt()) {
+            return iterations;
+        }
+        // At most one more period is simulated after the cycle is detected
+        return cycle.detectedAt() + Math.min(iterations - cycle.detectedAt(), cycle.period());
+    }
 }
\ No newline at end of file
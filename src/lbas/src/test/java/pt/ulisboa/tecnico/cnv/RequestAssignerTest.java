@@ -0,0 +1,38 @@
+package pt.ulisboa.tecnico.cnv;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class RequestAssignerTest {
+
+    private static String key(String uri) {
+        return RequestAssigner.coalescingKey(URI.create(uri));
+    }
+
+    @Test
+    void coalescesRequestsWithReorderedParameters() {
+        assertEquals(key("/capturetheflag?gridSize=30&numBlueAgents=5&numRedAgents=5&flagPlacementType=A"),
+                key("/capturetheflag?flagPlacementType=A&numRedAgents=5&gridSize=30&numBlueAgents=5"));
+        assertEquals(key("/fifteenpuzzle?size=4&shuffles=40"), key("/fifteenpuzzle?shuffles=40&size=4"));
+    }
+
+    @Test
+    void coalescesRequestsEstimatedAlike() {
+        // storeMetrics and malformed pairs do not change the request's estimate or response
+        assertEquals(key("/fifteenpuzzle?size=4&shuffles=40"), key("/fifteenpuzzle?size=4&storeMetrics=true&shuffles=40"));
+        assertEquals(key("/fifteenpuzzle?size=4&shuffles=40"), key("/fifteenpuzzle?size=4&shuffles=40&bad&="));
+        assertEquals("/fifteenpuzzle?shuffles=40#size=4", key("/fifteenpuzzle?size=4&shuffles=40"));
+    }
+
+    @Test
+    void separatesOtherRequests() {
+        assertNotEquals(key("/fifteenpuzzle?size=4&shuffles=40"), key("/fifteenpuzzle?size=4&shuffles=41"));
+        assertNotEquals(key("/fifteenpuzzle?size=4&shuffles=40"), key("/fifteenpuzzle?size=4"));
+        assertNotEquals(key("/gameoflife?size=4&shuffles=40"), key("/fifteenpuzzle?size=4&shuffles=40"));
+        assertEquals("/gameoflife?", key("/gameoflife"));
+    }
+}
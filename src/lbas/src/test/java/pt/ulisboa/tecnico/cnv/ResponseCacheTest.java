@@ -0,0 +1,114 @@
+package pt.ulisboa.tecnico.cnv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCacheTest {
+
+    private static final WorkerResponse RESPONSE = new WorkerResponse(200, "x".repeat(100));
+
+    /**
+     * Keys of the same length, so every cached response is charged the same size.
+     */
+    private static String key(int i) {
+        return String.format("/simulate?n=%06d", i);
+    }
+
+    private static final long SIZE = ResponseCache.size(key(0), RESPONSE);
+
+    @Test
+    void measuresStringsAsUtf8() {
+        for (String s : new String[]{"", "gameoflife", "ação", "€ 10", "😀 flag", "a߿bࠀc"}) {
+            assertEquals(s.getBytes(StandardCharsets.UTF_8).length, ResponseCache.utf8Length(s), s);
+        }
+        // a surrogate without its pair is charged as any other char of the basic plane
+        assertEquals(3, ResponseCache.utf8Length("\uD83D"));
+        assertEquals(4, ResponseCache.utf8Length("\uDE00a"));
+    }
+
+    @Test
+    void chargesKeysBodiesAndHeaders() {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put(null, List.of("HTTP/1.1 200 OK"));
+        headers.put("Content-Type", List.of("text/plain"));
+        headers.put("X-Complexity", List.of("12", "34"));
+        WorkerResponse response = new WorkerResponse(200, "corpo", headers);
+        assertEquals("key".length() + "corpo".length() + "HTTP/1.1 200 OK".length() + "Content-Type".length()
+                + "text/plain".length() + "X-Complexity".length() + 4, ResponseCache.size("key", response));
+    }
+
+    @Test
+    void keepsTheWeightOfTheCachedResponses() {
+        ResponseCache cache = new ResponseCache(10 * SIZE);
+        cache.put(key(0), RESPONSE, 1);
+        cache.put(key(1), RESPONSE, 1);
+        cache.put(key(1), RESPONSE, 5);
+        assertEquals(2, cache.size());
+        assertEquals(2 * SIZE, cache.getWeight());
+    }
+
+    @Test
+    void ignoresFailedAndOversizedResponses() {
+        ResponseCache cache = new ResponseCache(SIZE);
+        cache.put(key(0), new WorkerResponse(500, "x".repeat(100)), 1);
+        cache.put(key(1), new WorkerResponse(200, "x".repeat(101)), 1);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get(key(0)));
+
+        cache.put(key(2), RESPONSE, 1);
+        assertEquals(RESPONSE, cache.get(key(2)));
+    }
+
+    @Test
+    void evictsTheCheapestResponseFirst() {
+        ResponseCache cache = new ResponseCache(2 * SIZE);
+        cache.put(key(0), RESPONSE, 100);
+        cache.put(key(1), RESPONSE, 1);
+        cache.put(key(2), RESPONSE, 50);
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(2)));
+        assertEquals(2 * SIZE, cache.getWeight());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedOfEqualWorth() {
+        ResponseCache cache = new ResponseCache(2 * SIZE);
+        cache.put(key(0), RESPONSE, 10);
+        cache.put(key(1), RESPONSE, 10);
+        cache.put(key(2), RESPONSE, 10);
+        assertNull(cache.get(key(0)));
+
+        // the hit brings key 1 up to the inflation left by evicting key 0
+        assertNotNull(cache.get(key(1)));
+        cache.put(key(3), RESPONSE, 10);
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(3)));
+    }
+
+    @Test
+    void evictsExpensiveResponsesThatStopBeingRequested() {
+        ResponseCache cache = new ResponseCache(2 * SIZE);
+        cache.put(key(0), RESPONSE, 100);
+        // each eviction raises the inflation by the worth of a cheap response
+        for (int i = 1; i <= 50; i++) {
+            cache.put(key(i), RESPONSE, 1);
+        }
+        assertEquals(RESPONSE, cache.get(key(0)));
+        for (int i = 51; i <= 300; i++) {
+            cache.put(key(i), RESPONSE, 1);
+        }
+        assertNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(300)));
+    }
+}
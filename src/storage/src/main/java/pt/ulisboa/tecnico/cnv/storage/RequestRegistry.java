@@ -0,0 +1,106 @@
+package pt.ulisboa.tecnico.cnv.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Requests running on this worker, by the ID the load balancer gave them, so that they can be cancelled
+ * while they run (see the /cancel endpoint of the web server). Shared by the handlers of every game.
+ *
+ * A cancellation can reach the worker before the request it is for has been registered, since both are
+ * sent by the load balancer on different connections. Such cancellations are remembered for
+ * EARLY_CANCELLATION_TTL_MILLIS, and the request starts already cancelled if it is registered meanwhile.
+ */
+public class RequestRegistry {
+
+    /**
+     * Header with the ID the load balancer gave the request, to cancel it while it runs.
+     */
+    public final static String REQUEST_ID_HEADER = "X-Request-Id";
+
+    /**
+     * How long a cancellation of a request not registered yet is remembered.
+     */
+    public final static long EARLY_CANCELLATION_TTL_MILLIS = 60_000;
+
+    /**
+     * Cancellation flags of the requests running, by request ID.
+     */
+    private final static Map<String, AtomicBoolean> IN_PROGRESS = new ConcurrentHashMap<>();
+
+    /**
+     * System.nanoTime() at which each cancellation of a request not registered yet arrived, by request ID.
+     */
+    private final static Map<String, Long> EARLY_CANCELLATIONS = new ConcurrentHashMap<>();
+
+    private RequestRegistry() {
+    }
+
+    /**
+     * Registers a request so that it can be cancelled while it runs, returns its cancellation flag. The flag
+     * is already set if the request was cancelled before it started. Requests without an ID cannot be
+     * cancelled.
+     */
+    public static AtomicBoolean start(String requestId) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        if (requestId != null) {
+            IN_PROGRESS.put(requestId, cancelled);
+            // registered before looking, so a cancellation arriving meanwhile finds the flag or is found here
+            if (EARLY_CANCELLATIONS.remove(requestId) != null) {
+                cancelled.set(true);
+            }
+        }
+        return cancelled;
+    }
+
+    public static void finish(String requestId) {
+        if (requestId != null) {
+            IN_PROGRESS.remove(requestId);
+        }
+    }
+
+    /**
+     * Stops the request with the given ID if it is running on this worker, returns whether it was. Otherwise
+     * the cancellation is remembered in case the request has not started yet.
+     */
+    public static boolean cancel(String requestId) {
+        AtomicBoolean cancelled = IN_PROGRESS.get(requestId);
+        if (cancelled != null) {
+            cancelled.set(true);
+            return true;
+        }
+        long now = System.nanoTime();
+        long ttl = TimeUnit.MILLISECONDS.toNanos(EARLY_CANCELLATION_TTL_MILLIS);
+        // cancellations of requests that already finished, or never came, are dropped here
+        EARLY_CANCELLATIONS.values().removeIf(arrival -> now - arrival > ttl);
+        EARLY_CANCELLATIONS.put(requestId, now);
+
+        // the request may have been registered since the first lookup
+        cancelled = IN_PROGRESS.get(requestId);
+        if (cancelled != null) {
+            EARLY_CANCELLATIONS.remove(requestId);
+            cancelled.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Answers a cancelled request with 503.
+     */
+    public static void sendCancelled(HttpExchange he, String requestId) throws IOException {
+        System.out.println("Request " + requestId + " cancelled.");
+        byte[] response = "Request cancelled.".getBytes(StandardCharsets.UTF_8);
+        he.sendResponseHeaders(503, response.length);
+        OutputStream os = he.getResponseBody();
+        os.write(response);
+        os.close();
+    }
+}
@@ -0,0 +1,93 @@
+package pt.ulisboa.tecnico.cnv.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestRegistryTest {
+
+    @Test
+    void cancelsRunningRequests() {
+        AtomicBoolean cancelled = RequestRegistry.start("running");
+        assertFalse(cancelled.get());
+        assertTrue(RequestRegistry.cancel("running"));
+        assertTrue(cancelled.get());
+        RequestRegistry.finish("running");
+    }
+
+    @Test
+    void startsRequestsCancelledBeforeTheyArrive() {
+        assertFalse(RequestRegistry.cancel("early"));
+        AtomicBoolean cancelled = RequestRegistry.start("early");
+        assertTrue(cancelled.get());
+        RequestRegistry.finish("early");
+
+        // the early cancellation was used up
+        assertFalse(RequestRegistry.start("early").get());
+        RequestRegistry.finish("early");
+    }
+
+    @Test
+    void forgetsFinishedRequests() {
+        AtomicBoolean cancelled = RequestRegistry.start("finished");
+        RequestRegistry.finish("finished");
+        assertFalse(RequestRegistry.cancel("finished"));
+        assertFalse(cancelled.get());
+    }
+
+    @Test
+    void requestsWithoutIdCannotBeCancelled() {
+        AtomicBoolean cancelled = RequestRegistry.start(null);
+        assertFalse(cancelled.get());
+        RequestRegistry.finish(null);
+    }
+
+    @Test
+    void everyCancelledRequestEndsCancelled() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 200; round++) {
+                String requestId = "race-" + round;
+                CountDownLatch go = new CountDownLatch(1);
+                Future<AtomicBoolean> started = pool.submit(() -> {
+                    go.await();
+                    return RequestRegistry.start(requestId);
+                });
+                Future<Boolean> cancel = pool.submit(() -> {
+                    go.await();
+                    return RequestRegistry.cancel(requestId);
+                });
+                go.countDown();
+                cancel.get(5, TimeUnit.SECONDS);
+                assertTrue(started.get(5, TimeUnit.SECONDS).get(), requestId);
+                RequestRegistry.finish(requestId);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancellationsOnlyReachTheirRequest() {
+        List<AtomicBoolean> flags = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            flags.add(RequestRegistry.start("many-" + i));
+        }
+        RequestRegistry.cancel("many-3");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i == 3, flags.get(i).get());
+            RequestRegistry.finish("many-" + i);
+        }
+    }
+}
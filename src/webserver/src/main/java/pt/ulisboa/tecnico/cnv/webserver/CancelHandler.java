@@ -0,0 +1,46 @@
+package pt.ulisboa.tecnico.cnv.webserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import pt.ulisboa.tecnico.cnv.storage.RequestRegistry;
+
+/**
+ * Stops a request in progress on this worker, called by the load balancer once it stops waiting for the
+ * response (/cancel?requestId=...). The request is identified by the X-Request-Id header it was sent with.
+ * Answers 200 if the request was running, and 202 otherwise: the cancellation is then kept for a while in
+ * case the request has not reached its handler yet (see RequestRegistry).
+ */
+public class CancelHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange he) throws IOException {
+        String query = he.getRequestURI().getRawQuery();
+        String requestId = (query != null && query.startsWith("requestId=")) ? query.substring("requestId=".length()) : null;
+
+        if (requestId == null) {
+            sendResponse(he, 400, "Missing requestId");
+            return;
+        }
+
+        boolean cancelled = RequestRegistry.cancel(requestId);
+        System.out.println("Cancel request " + requestId + (cancelled ? ": cancelled." : ": not in progress, kept for it."));
+        if (cancelled) {
+            sendResponse(he, 200, "Cancelled");
+        } else {
+            sendResponse(he, 202, "Not in progress, cancelled if it starts");
+        }
+    }
+
+    private static void sendResponse(HttpExchange he, int status, String response) throws IOException {
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        he.sendResponseHeaders(status, body.length);
+        OutputStream os = he.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+}
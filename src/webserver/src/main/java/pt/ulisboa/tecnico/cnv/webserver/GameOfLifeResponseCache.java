@@ -0,0 +1,92 @@
+package pt.ulisboa.tecnico.cnv.webserver;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import pt.ulisboa.tecnico.cnv.gameoflife.GameOfLifeResult;
+import pt.ulisboa.tecnico.cnv.gameoflife.GameOfLifeResultCache;
+
+/**
+ * Least recently used cache of Game of Life results, bounded by the total weight of the cached
+ * responses and final maps. Configurable with the gameoflife.cache.maxBytes system property.
+ */
+public class GameOfLifeResponseCache implements GameOfLifeResultCache {
+
+    public final static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long weight = 0;
+
+    /**
+     * Results by request key, in access order.
+     */
+    private final LinkedHashMap<String, GameOfLifeResult> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Cached results of each map by iterations, to find the seed of a longer game.
+     */
+    private final Map<String, TreeMap<Integer, GameOfLifeResult>> resultsByMap = new HashMap<>();
+
+    public GameOfLifeResponseCache() {
+        this(Long.getLong("gameoflife.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    public GameOfLifeResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized GameOfLifeResult get(String key) {
+        return results.get(key);
+    }
+
+    @Override
+    public synchronized GameOfLifeResult findSeed(String mapFilename, int iterations) {
+        TreeMap<Integer, GameOfLifeResult> byIterations = resultsByMap.get(mapFilename);
+        if (byIterations == null) {
+            return null;
+        }
+        Map.Entry<Integer, GameOfLifeResult> seed = byIterations.lowerEntry(iterations);
+        return (seed != null) ? seed.getValue() : null;
+    }
+
+    @Override
+    public synchronized void put(String key, GameOfLifeResult result) {
+        if (result.getWeight() > maxBytes) {
+            return;
+        }
+        GameOfLifeResult previous = results.put(key, result);
+        if (previous != null) {
+            weight -= previous.getWeight();
+            unindex(previous);
+        }
+        weight += result.getWeight();
+        resultsByMap.computeIfAbsent(result.getMapFilename(), m -> new TreeMap<>())
+                .put(result.getIterations(), result);
+
+        Iterator<GameOfLifeResult> eldest = results.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            GameOfLifeResult evicted = eldest.next();
+            eldest.remove();
+            weight -= evicted.getWeight();
+            unindex(evicted);
+        }
+    }
+
+    /**
+     * Removes a result from the seed index, unless another request key already replaced it there.
+     */
+    private void unindex(GameOfLifeResult result) {
+        TreeMap<Integer, GameOfLifeResult> byIterations = resultsByMap.get(result.getMapFilename());
+        if (byIterations == null) {
+            return;
+        }
+        byIterations.remove(result.getIterations(), result);
+        if (byIterations.isEmpty()) {
+            resultsByMap.remove(result.getMapFilename());
+        }
+    }
+}
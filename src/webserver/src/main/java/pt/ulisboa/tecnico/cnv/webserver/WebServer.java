@@ -21,10 +21,11 @@ public class WebServer {
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
         server.createContext("/", new RootHandler());
-        server.createContext("/gameoflife", new GameOfLifeHandler());
+        server.createContext("/gameoflife", new GameOfLifeHandler(new GameOfLifeResponseCache()));
         server.createContext("/fifteenpuzzle", new FifteenPuzzleHandler());
         server.createContext("/capturetheflag", new CaptureTheFlagHandler());
         server.createContext("/test", new TestHandler());
+        server.createContext("/cancel", new CancelHandler());
         server.start();
         System.out.println("Web server started on port " + port);
     }